@@ -0,0 +1,103 @@
+package ru.hogwarts.school.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.hogwarts.school.SchoolApplication;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.StudentService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load against the embedded Tomcat, comparing the default thread
+ * pool alone with {@code ConcurrencyLimitFilter} capping requests at the size of the
+ * connection pool. Every JMH thread is one client that sends its next request as
+ * soon as the previous one completes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({"none", "20"})
+    private String concurrencyLimit;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private HttpRequest pageRequest;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Responses {
+        public long ok;
+        public long rejected;
+        public long failed;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<String> args = new ArrayList<>(List.of("--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.datasource.hikari.maximum-pool-size=20",
+                "--spring.liquibase.enabled=false",
+                "--spring.jpa.hibernate.ddl-auto=create-drop",
+                "--path.to.avatars.folder=target/benchmark-avatars",
+                "--logging.level.root=WARN",
+                "--logging.level.ru.hogwarts.school=WARN"));
+        if (!concurrencyLimit.equals("none")) {
+            args.add("--request.concurrency.max-requests=" + concurrencyLimit);
+        }
+        context = new SpringApplicationBuilder(SchoolApplication.class)
+                .logStartupInfo(false)
+                .run(args.toArray(String[]::new));
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            students.add(new Student("Student " + i, 11 + i % 7));
+        }
+        context.getBean(StudentService.class).createStudents(students);
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        pageRequest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/students/page?afterId=100&size=50"))
+                .GET()
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getStudentsPage(Responses responses) throws InterruptedException {
+        try {
+            int status = httpClient.send(pageRequest, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200) {
+                responses.ok++;
+            } else if (status == 503) {
+                responses.rejected++;
+            } else {
+                responses.failed++;
+            }
+            return status;
+        } catch (IOException e) {
+            responses.failed++;
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package ru.hogwarts.school.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.hogwarts.school.SchoolApplication;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.StudentService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop HTTP load comparing the blocking JPA reads with their {@code /reactive}
+ * R2DBC counterparts in the same application, database and JVM. Throughput and latency
+ * percentiles are measured at once. The Hibernate caches are off, so both stacks query
+ * the database on every request. JDBC and R2DBC share one in-memory H2 database; point
+ * both {@code spring.datasource.url} and {@code spring.r2dbc.url} at PostgreSQL to
+ * include network round trips. Both stacks wait up to twenty seconds for a connection,
+ * and a reactive read still waiting then is answered with 503, before the servlet async
+ * timeout. Every non-200 response counts as failed. The client timeout only guards
+ * against a hung server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(1)
+public class ReactiveLoadBenchmark {
+    private static final int STUDENTS = 1000;
+    // above the server's own bound, so it only fires if the server stops answering
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    @Param({"mvc", "reactive"})
+    private String stack;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUrl;
+    private final List<Long> studentIds = new ArrayList<>();
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Responses {
+        public long ok;
+        public long failed;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SchoolApplication.class)
+                .profiles("reactive")
+                .logStartupInfo(false)
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:reactive-load;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.hikari.maximum-pool-size=20",
+                        "--spring.datasource.hikari.connection-timeout=20000",
+                        "--spring.r2dbc.url=r2dbc:h2:mem:///reactive-load;DB_CLOSE_DELAY=-1",
+                        "--spring.r2dbc.username=sa",
+                        "--spring.r2dbc.password=",
+                        "--spring.r2dbc.pool.max-size=20",
+                        "--spring.r2dbc.pool.max-acquire-time=20s",
+                        "--reactive.read-timeout=20s",
+                        "--spring.liquibase.enabled=false",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+                        "--spring.jpa.properties.hibernate.cache.use_query_cache=false",
+                        "--path.to.avatars.folder=target/benchmark-avatars",
+                        "--logging.level.root=WARN",
+                        "--logging.level.ru.hogwarts.school=WARN");
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            students.add(new Student("Student " + i, 16 + i % 7));
+        }
+        context.getBean(StudentService.class).createStudents(students).forEach(result -> studentIds.add(result.id()));
+
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUrl = "http://localhost:" + port + (stack.equals("reactive") ? "/reactive" : "");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getStudent(Responses responses) throws InterruptedException {
+        long id = studentIds.get(ThreadLocalRandom.current().nextInt(STUDENTS));
+        return send("/students/" + id, responses);
+    }
+
+    @Benchmark
+    public int getStudentsByAge(Responses responses) throws InterruptedException {
+        return send("/students/byAge?age=" + (16 + ThreadLocalRandom.current().nextInt(7)), responses);
+    }
+
+    private int send(String path, Responses responses) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(REQUEST_TIMEOUT).GET().build();
+        try {
+            int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+            if (status == 200) {
+                responses.ok++;
+            } else {
+                responses.failed++;
+            }
+            return status;
+        } catch (IOException e) {
+            responses.failed++;
+            return -1;
+        }
+    }
+}
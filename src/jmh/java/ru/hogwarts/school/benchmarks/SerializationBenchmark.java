@@ -0,0 +1,113 @@
+package ru.hogwarts.school.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rendering of the lists returned by the listing endpoints in each supported format,
+ * using an {@link ObjectMapper} configured the way Spring Boot configures it for MVC.
+ * The set-up prints the plain and gzipped payload sizes of every list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final TypeReference<List<Student>> STUDENT_LIST = new TypeReference<>() {
+    };
+
+    @Param({"100", "1000"})
+    private int size;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private List<Student> students;
+    private List<Faculty> faculties;
+    private List<Avatar> avatars;
+    private byte[] studentsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = switch (format) {
+            case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+            default -> Jackson2ObjectMapperBuilder.json().build();
+        };
+        students = new ArrayList<>(size);
+        faculties = new ArrayList<>(size);
+        avatars = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Faculty faculty = new Faculty();
+            faculty.setId((long) i);
+            faculty.setName("Faculty " + i);
+            faculty.setColour("colour " + i);
+            faculties.add(faculty);
+
+            Student student = new Student("Student " + i, 11 + i % 7);
+            student.setId((long) i);
+            student.setFaculty(faculty);
+            students.add(student);
+
+            avatars.add(new Avatar((long) i, "/avatars/content/ab/cd/" + i + ".png", "image/png", 20_000L + i, student));
+        }
+        studentsJson = objectMapper.writeValueAsBytes(students);
+        printPayloadSize("students", students);
+        printPayloadSize("faculties", faculties);
+        printPayloadSize("avatars", avatars);
+    }
+
+    private void printPayloadSize(String name, List<?> values) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(values);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            gzip.write(payload);
+        }
+        System.out.printf("%n%s %d %s: %d bytes, %d bytes gzipped%n", format, size, name, payload.length, gzipped.size());
+    }
+
+    @Benchmark
+    public byte[] writeStudents() throws IOException {
+        return objectMapper.writeValueAsBytes(students);
+    }
+
+    @Benchmark
+    public byte[] writeFaculties() throws IOException {
+        return objectMapper.writeValueAsBytes(faculties);
+    }
+
+    @Benchmark
+    public byte[] writeAvatars() throws IOException {
+        return objectMapper.writeValueAsBytes(avatars);
+    }
+
+    @Benchmark
+    public byte[] writeStudentsGzipped() throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(gzipped)) {
+            objectMapper.writeValue(gzip, students);
+        }
+        return gzipped.toByteArray();
+    }
+
+    @Benchmark
+    public List<Student> readStudents() throws IOException {
+        return objectMapper.readValue(studentsJson, STUDENT_LIST);
+    }
+}
@@ -0,0 +1,134 @@
+package ru.hogwarts.school.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.hogwarts.school.SchoolApplication;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.StudentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Student and faculty services on the full application context backed by in-memory H2,
+ * with the second-level, query and aggregate caches configured as in production.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final int FACULTIES = 10;
+    private static final int EDIT_BATCH_SIZE = 100;
+
+    @Param({"1000", "10000"})
+    private int students;
+
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private FacultyService facultyService;
+    private Long facultyId;
+    private String studentName;
+    private List<Student> editBatch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(SchoolApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.datasource.url=jdbc:h2:mem:benchmark",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.liquibase.enabled=false",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--path.to.avatars.folder=target/benchmark-avatars",
+                        "--logging.level.root=WARN",
+                        "--logging.level.ru.hogwarts.school=WARN");
+        studentService = context.getBean(StudentService.class);
+        facultyService = context.getBean(FacultyService.class);
+
+        List<Faculty> faculties = new ArrayList<>();
+        for (int i = 0; i < FACULTIES; i++) {
+            Faculty faculty = new Faculty();
+            faculty.setName("Faculty " + i);
+            faculty.setColour("colour " + i);
+            faculties.add(faculty);
+        }
+        List<BatchItemResult> createdFaculties = facultyService.createFaculties(faculties);
+        List<Student> newStudents = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            Student student = new Student("Student " + i, 11 + i % 7);
+            student.setFaculty(faculties.get(i % FACULTIES));
+            newStudents.add(student);
+        }
+        List<BatchItemResult> createdStudents = studentService.createStudents(newStudents);
+
+        facultyId = createdFaculties.get(0).id();
+        studentName = "Student " + students / 2;
+        editBatch = new ArrayList<>(EDIT_BATCH_SIZE);
+        for (int i = 0; i < EDIT_BATCH_SIZE; i++) {
+            Student student = new Student("Student " + i, 18);
+            student.setId(createdStudents.get(i).id());
+            editBatch.add(student);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Student findStudent() {
+        return studentService.findStudent(editBatch.get(0).getId());
+    }
+
+    @Benchmark
+    public List<Student> findStudentsPage() {
+        return studentService.findStudentsPage(0L, 100);
+    }
+
+    @Benchmark
+    public List<Student> findByFaculty() {
+        return studentService.findByFaculty(facultyId);
+    }
+
+    @Benchmark
+    public List<Student> findByAgeBetween() {
+        return studentService.findByAgeBetween(12, 14);
+    }
+
+    @Benchmark
+    public double getAverageAge() {
+        return studentService.getAverageAge();
+    }
+
+    @Benchmark
+    public List<String> getStudentNamesStartingWith() {
+        return studentService.getStudentNamesStartingWith('S');
+    }
+
+    @Benchmark
+    public Faculty findFacultyOfStudent() {
+        return facultyService.findFacultyOfStudent(studentName);
+    }
+
+    @Benchmark
+    public String getLongestFacultyName() {
+        return facultyService.getLongestFacultyName();
+    }
+
+    @Benchmark
+    public List<BatchItemResult> editStudents() {
+        return studentService.editStudents(editBatch);
+    }
+}
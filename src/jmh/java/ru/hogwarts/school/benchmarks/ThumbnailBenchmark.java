@@ -0,0 +1,64 @@
+package ru.hogwarts.school.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import ru.hogwarts.school.service.ThumbnailGenerator;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an uploaded avatar and scaling it to all configured thumbnail widths,
+ * which is the work done by one thumbnail job.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThumbnailBenchmark {
+
+    private static final int[] WIDTHS = {64, 100, 256};
+
+    @Param({"png", "jpg"})
+    private String format;
+
+    @Param({"640", "2048"})
+    private int sourceWidth;
+
+    private final ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator();
+    private Path original;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int sourceHeight = sourceWidth * 3 / 4;
+        int imageType = format.equals("png") ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage image = new BufferedImage(sourceWidth, sourceHeight, imageType);
+        Graphics2D graphics2D = image.createGraphics();
+        graphics2D.setPaint(new GradientPaint(0, 0, Color.RED, sourceWidth, sourceHeight, Color.BLUE));
+        graphics2D.fillRect(0, 0, sourceWidth, sourceHeight);
+        graphics2D.setColor(Color.WHITE);
+        for (int x = 0; x < sourceWidth; x += 16) {
+            graphics2D.drawLine(x, 0, sourceWidth - x, sourceHeight);
+        }
+        graphics2D.dispose();
+        original = Files.createTempFile("avatar", "." + format);
+        ImageIO.write(image, format, original.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(original);
+    }
+
+    @Benchmark
+    public Map<Integer, byte[]> generate() throws IOException {
+        return thumbnailGenerator.generate(original, format, WIDTHS);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.hogwarts.school.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Lets concurrent calls of the method with equal arguments share one execution, see
+ * {@link CoalescingAspect}. Only for reads whose result callers do not modify, since
+ * every waiting caller receives the same instance.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Coalesced {
+}
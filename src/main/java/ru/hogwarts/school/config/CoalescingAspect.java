@@ -0,0 +1,98 @@
+package ru.hogwarts.school.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight execution of {@link Coalesced} methods: the first call with a given
+ * method and arguments runs, and calls with equal arguments arriving while it is in
+ * flight wait for its {@link CompletableFuture} and get the same result or exception
+ * instead of querying again. The aspect runs outside the transaction interceptor, so
+ * waiting callers hold no connection. At most {@code coalescing.max-keys} distinct calls
+ * are tracked at once; beyond that new calls simply run on their own.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class CoalescingAspect {
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Method, MethodCounters> counters = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final int maxKeys;
+
+    public CoalescingAspect(MeterRegistry meterRegistry, @Value("${coalescing.max-keys:10000}") int maxKeys) {
+        this.meterRegistry = meterRegistry;
+        this.maxKeys = maxKeys;
+        meterRegistry.gauge("service.coalescing.in-flight", inFlight, Map::size);
+    }
+
+    @Around("@annotation(ru.hogwarts.school.config.Coalesced)")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        MethodCounters methodCounters = counters.computeIfAbsent(method, this::createCounters);
+        CallKey key = new CallKey(method, Arrays.asList(joinPoint.getArgs()));
+        CompletableFuture<Object> runningCall = inFlight.get(key);
+        if (runningCall == null && inFlight.size() >= maxKeys) {
+            methodCounters.untracked().increment();
+            return joinPoint.proceed();
+        }
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        if (runningCall == null) {
+            runningCall = inFlight.putIfAbsent(key, call);
+        }
+        if (runningCall != null) {
+            methodCounters.coalesced().increment();
+            try {
+                return runningCall.join();
+            } catch (CompletionException e) {
+                throw e.getCause();
+            }
+        }
+        methodCounters.executed().increment();
+        try {
+            Object result = joinPoint.proceed();
+            call.complete(result);
+            return result;
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    private MethodCounters createCounters(Method method) {
+        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return new MethodCounters(counter(name, "executed"), counter(name, "coalesced"), counter(name, "untracked"));
+    }
+
+    private Counter counter(String method, String outcome) {
+        return Counter.builder("service.coalescing.calls")
+                .description("Calls of coalesced methods; coalesced ones reused a running call instead of executing")
+                .tag("method", method)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private record CallKey(Method method, List<Object> args) {
+    }
+
+    private record MethodCounters(Counter executed, Counter coalesced, Counter untracked) {
+    }
+}
@@ -0,0 +1,122 @@
+package ru.hogwarts.school.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of requests processed at once, typically at the size of the
+ * connection pool. Without it Tomcat hands every worker thread a request that then
+ * queues on the pool; here excess requests wait briefly for a permit and are then
+ * rejected with 503 and {@code Retry-After}. An asynchronous request, such as a
+ * streamed export or a reactive read, keeps its permit until it completes rather than
+ * until its first dispatch returns. Actuator endpoints and the change feed, whose
+ * subscriptions stay open indefinitely, are never limited. Rejections are counted in
+ * {@code http.server.requests.rejected} instead of being logged one by one.
+ * Enabled by setting {@code request.concurrency.max-requests}.
+ */
+@Component
+@ConditionalOnProperty("request.concurrency.max-requests")
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+    private final Semaphore permits;
+    private final long maxWaitNanos;
+    private final long retryAfterSeconds;
+    private final Counter rejectedCounter;
+
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimitFilter.class);
+
+    public ConcurrencyLimitFilter(@Value("${request.concurrency.max-requests}") int maxRequests,
+                                  @Value("${request.concurrency.max-wait:500ms}") Duration maxWait,
+                                  @Value("${request.concurrency.retry-after:1s}") Duration retryAfter,
+                                  MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxRequests, true);
+        this.maxWaitNanos = maxWait.toNanos();
+        this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+        this.rejectedCounter = Counter.builder("http.server.requests.rejected")
+                .description("Requests rejected because the concurrency limit was reached")
+                .register(meterRegistry);
+        meterRegistry.gauge("http.server.requests.in-flight", permits, p -> maxRequests - p.availablePermits());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return path.startsWith("/actuator") || path.equals("/changes");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedCounter.increment();
+            logger.debug("Concurrency limit reached, rejecting {} {}", request.getMethod(), request.getRequestURI());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+            response.getWriter().write("Сервер перегружен, повторите запрос позже");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new PermitReleasingListener());
+            } else {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * The container calls {@code onComplete} after a timeout or an error as well, so
+     * the permit is released there only.
+     */
+    private class PermitReleasingListener implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permits.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // listeners are dropped when asynchronous processing is started again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
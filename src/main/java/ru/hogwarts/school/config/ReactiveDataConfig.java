@@ -0,0 +1,70 @@
+package ru.hogwarts.school.config;
+
+import io.micrometer.core.instrument.Tags;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.actuate.metrics.r2dbc.ConnectionPoolMetrics;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.data.r2dbc.repository.config.EnableR2dbcRepositories;
+import reactor.core.scheduler.Schedulers;
+import ru.hogwarts.school.repository.ReactiveStudentRepository;
+
+/**
+ * Sets up the R2DBC pool and repositories behind the {@code /reactive} read endpoints.
+ * The pool is deliberately not a {@code ConnectionFactory} bean: Boot would then skip
+ * the JDBC DataSource that JPA, Liquibase and every other endpoint still run on.
+ * {@code spring.r2dbc.url} must name a plain driver URL, pooling is added here.
+ * Connections are handed to waiting readers on a separate scheduler. By default the
+ * thread that acquires or releases a connection serves every reader queued meanwhile,
+ * and with a driver that runs queries on the calling thread, such as H2's, a request
+ * thread could keep running other requests' queries, and never answer its own, for as
+ * long as the load lasted.
+ */
+@Configuration
+@Profile("reactive")
+@EnableConfigurationProperties(R2dbcProperties.class)
+@EnableR2dbcRepositories(basePackageClasses = ReactiveStudentRepository.class)
+public class ReactiveDataConfig {
+    private static final String POOL_NAME = "reactive";
+
+    private final ConnectionPool connectionPool;
+
+    public ReactiveDataConfig(R2dbcProperties properties) {
+        ConnectionFactory connectionFactory = ConnectionFactoryBuilder.withUrl(properties.getUrl())
+                .username(properties.getUsername())
+                .password(properties.getPassword())
+                .build();
+        R2dbcProperties.Pool pool = properties.getPool();
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .name(POOL_NAME)
+                .initialSize(pool.getInitialSize())
+                .maxSize(pool.getMaxSize())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxAcquireTime(pool.getMaxAcquireTime())
+                .customizer(poolBuilder -> poolBuilder.acquisitionScheduler(Schedulers.boundedElastic()))
+                .build());
+    }
+
+    @Bean
+    public R2dbcEntityTemplate r2dbcEntityTemplate() {
+        return new R2dbcEntityTemplate(connectionPool);
+    }
+
+    @Bean
+    public ConnectionPoolMetrics reactiveConnectionPoolMetrics() {
+        return new ConnectionPoolMetrics(connectionPool, POOL_NAME, Tags.empty());
+    }
+
+    @PreDestroy
+    public void closeConnectionPool() {
+        connectionPool.dispose();
+    }
+}
@@ -0,0 +1,112 @@
+package ru.hogwarts.school.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.jdbc.JdbcConnectionDetails;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.JpaVendorAdapter;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends read-only transactions to the replicas listed in {@code datasource.replica.urls}
+ * and everything else to the primary. The proxy defers fetching a physical connection
+ * until the first statement, by which time the transaction has marked it read-only.
+ * Every pool uses the primary's credentials and {@code spring.datasource.hikari} settings.
+ * Sessions served by a replica read the second-level and query caches but do not fill them.
+ */
+@Configuration
+@ConditionalOnProperty("datasource.replica.urls")
+public class ReadReplicaConfig {
+
+    @Bean(destroyMethod = "close")
+    public ReplicaRouter replicaRouter(DataSourceProperties properties,
+                                       ObjectProvider<JdbcConnectionDetails> connectionDetails,
+                                       Environment environment,
+                                       @Value("${datasource.replica.urls}") List<String> replicaUrls,
+                                       @Value("${datasource.replica.max-lag:5s}") Duration maxLag,
+                                       MeterRegistry meterRegistry) {
+        JdbcConnectionDetails primaryDetails = connectionDetails.getIfAvailable(() -> new JdbcConnectionDetails() {
+            @Override
+            public String getUsername() {
+                return properties.determineUsername();
+            }
+
+            @Override
+            public String getPassword() {
+                return properties.determinePassword();
+            }
+
+            @Override
+            public String getJdbcUrl() {
+                return properties.determineUrl();
+            }
+        });
+        HikariDataSource primary = createPool(environment, primaryDetails, primaryDetails.getJdbcUrl(), "primary");
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < replicaUrls.size(); i++) {
+            replicas.add(createPool(environment, primaryDetails, replicaUrls.get(i).trim(), "replica-" + (i + 1)));
+        }
+        return new ReplicaRouter(primary, replicas, maxLag, meterRegistry);
+    }
+
+    @Bean
+    public DataSource dataSource(ReplicaRouter replicaRouter) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(replicaRouter.getPrimary());
+        dataSource.setReadOnlyDataSource(replicaRouter.getReadOnlyDataSource());
+        return dataSource;
+    }
+
+    /**
+     * Boot's adapter with a dialect that keeps replica sessions from populating the
+     * second-level and query caches, see {@link ReplicaCacheModeJpaDialect}.
+     */
+    @Bean
+    public JpaVendorAdapter jpaVendorAdapter(JpaProperties properties, ReplicaRouter replicaRouter) {
+        HibernateJpaDialect jpaDialect = new ReplicaCacheModeJpaDialect(replicaRouter);
+        HibernateJpaVendorAdapter adapter = new HibernateJpaVendorAdapter() {
+            @Override
+            public HibernateJpaDialect getJpaDialect() {
+                return jpaDialect;
+            }
+        };
+        adapter.setShowSql(properties.isShowSql());
+        if (properties.getDatabase() != null) {
+            adapter.setDatabase(properties.getDatabase());
+        }
+        if (properties.getDatabasePlatform() != null) {
+            adapter.setDatabasePlatform(properties.getDatabasePlatform());
+        }
+        adapter.setGenerateDdl(properties.isGenerateDdl());
+        return adapter;
+    }
+
+    private HikariDataSource createPool(Environment environment, JdbcConnectionDetails details, String url, String poolName) {
+        HikariDataSource pool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(details.getDriverClassName())
+                .url(url)
+                .username(details.getUsername())
+                .password(details.getPassword())
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(poolName);
+        return pool;
+    }
+}
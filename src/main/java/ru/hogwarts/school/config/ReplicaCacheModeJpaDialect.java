@@ -0,0 +1,60 @@
+package ru.hogwarts.school.config;
+
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.orm.jpa.vendor.HibernateJpaDialect;
+import org.springframework.transaction.TransactionDefinition;
+
+import java.sql.SQLException;
+
+import static org.hibernate.jpa.SpecHints.HINT_SPEC_CACHE_STORE_MODE;
+
+/**
+ * Keeps sessions of read-only transactions from filling the second-level and query
+ * caches while a replica serves them. A replica may not have applied the latest writes
+ * yet, and a query result cached after a write's update timestamp would be served as
+ * fresh until the next write or the region TTL. Lookups by id still read the entity
+ * regions, which only the primary populates. Queries bypass the caches altogether:
+ * Hibernate stores a query cache miss even under {@link CacheMode#GET}. Read-only
+ * transactions that fall back to the primary because no replica is usable cache as usual.
+ */
+public class ReplicaCacheModeJpaDialect extends HibernateJpaDialect {
+    private final ReplicaRouter replicaRouter;
+
+    private record ReplicaTransactionData(Object transactionData, EntityManager entityManager,
+                                          Object previousStoreMode, CacheMode previousCacheMode) {
+    }
+
+    public ReplicaCacheModeJpaDialect(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
+
+    @Override
+    public Object beginTransaction(EntityManager entityManager, TransactionDefinition definition) throws SQLException {
+        Object transactionData = super.beginTransaction(entityManager, definition);
+        if (!definition.isReadOnly() || !replicaRouter.hasAvailableReplica()) {
+            return transactionData;
+        }
+        // find() takes its cache mode from the session properties and reads as GET, queries use the session's
+        Object previousStoreMode = entityManager.getProperties().get(HINT_SPEC_CACHE_STORE_MODE);
+        CacheMode previousCacheMode = entityManager.unwrap(Session.class).getCacheMode();
+        entityManager.setProperty(HINT_SPEC_CACHE_STORE_MODE, CacheStoreMode.BYPASS);
+        entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+        return new ReplicaTransactionData(transactionData, entityManager, previousStoreMode, previousCacheMode);
+    }
+
+    @Override
+    public void cleanupTransaction(Object transactionData) {
+        if (transactionData instanceof ReplicaTransactionData replicaTransactionData) {
+            EntityManager entityManager = replicaTransactionData.entityManager();
+            entityManager.setProperty(HINT_SPEC_CACHE_STORE_MODE, replicaTransactionData.previousStoreMode() != null
+                    ? replicaTransactionData.previousStoreMode()
+                    : CacheStoreMode.USE);
+            entityManager.unwrap(Session.class).setCacheMode(replicaTransactionData.previousCacheMode());
+            transactionData = replicaTransactionData.transactionData();
+        }
+        super.cleanupTransaction(transactionData);
+    }
+}
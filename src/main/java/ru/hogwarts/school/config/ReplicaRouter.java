@@ -0,0 +1,148 @@
+package ru.hogwarts.school.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Owns the primary and replica connection pools and decides which replica serves
+ * the next read-only connection. Replicas take turns; one that cannot be reached or
+ * lags behind the primary by more than {@code maxLag} is skipped until it catches up,
+ * and with no usable replica reads go to the primary.
+ */
+public class ReplicaRouter implements MeterBinder, AutoCloseable {
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery()"
+            + " OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    private final HikariDataSource primary;
+    private final List<HikariDataSource> replicas;
+    private final List<JdbcTemplate> lagQueries = new ArrayList<>();
+    private final double[] lagSeconds;
+    private final Duration maxLag;
+    private final double maxLagSeconds;
+    private final RoutingDataSource readOnlyDataSource = new RoutingDataSource();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private volatile List<Integer> availableReplicas = List.of();
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    public ReplicaRouter(HikariDataSource primary, List<HikariDataSource> replicas, Duration maxLag,
+                         MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.lagSeconds = new double[replicas.size()];
+        this.maxLag = maxLag;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+        MicrometerMetricsTrackerFactory metricsTrackerFactory = new MicrometerMetricsTrackerFactory(meterRegistry);
+        primary.setMetricsTrackerFactory(metricsTrackerFactory);
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            HikariDataSource replica = replicas.get(i);
+            replica.setMetricsTrackerFactory(metricsTrackerFactory);
+            JdbcTemplate lagQuery = new JdbcTemplate(replica);
+            lagQuery.setQueryTimeout(Math.max(1, (int) maxLag.toSeconds()));
+            lagQueries.add(lagQuery);
+            lagSeconds[i] = Double.NaN;
+            targets.put(i, replica);
+        }
+        readOnlyDataSource.setTargetDataSources(targets);
+        readOnlyDataSource.setDefaultTargetDataSource(primary);
+        readOnlyDataSource.afterPropertiesSet();
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public DataSource getReadOnlyDataSource() {
+        return readOnlyDataSource;
+    }
+
+    public Duration getMaxLag() {
+        return maxLag;
+    }
+
+    public boolean hasAvailableReplica() {
+        return !availableReplicas.isEmpty();
+    }
+
+    @Scheduled(fixedDelayString = "${datasource.replica.check-interval:5s}")
+    public void checkReplicationLag() {
+        List<Integer> available = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            double lag = measureLag(i);
+            boolean wasAvailable = availableReplicas.contains(i);
+            boolean isAvailable = lag <= maxLagSeconds;
+            if (wasAvailable && !isAvailable) {
+                logger.warn("Replica {} is unavailable or lagging {} s behind, reads fall back", replicas.get(i).getPoolName(), lag);
+            } else if (!wasAvailable && isAvailable) {
+                logger.info("Replica {} is serving reads", replicas.get(i).getPoolName());
+            }
+            lagSeconds[i] = lag;
+            if (isAvailable) {
+                available.add(i);
+            }
+        }
+        availableReplicas = List.copyOf(available);
+    }
+
+    private double measureLag(int replica) {
+        try {
+            Double lag = lagQueries.get(replica).queryForObject(LAG_QUERY, Double.class);
+            return lag == null ? Double.POSITIVE_INFINITY : lag;
+        } catch (RuntimeException e) {
+            logger.debug("Replication lag check of {} failed", replicas.get(replica).getPoolName(), e);
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = i;
+            String pool = replicas.get(i).getPoolName();
+            Gauge.builder("datasource.replica.lag", () -> lagSeconds[replica])
+                    .description("Replication lag of the replica, NaN until first checked")
+                    .baseUnit("seconds")
+                    .tag("pool", pool)
+                    .register(registry);
+            Gauge.builder("datasource.replica.available", () -> availableReplicas.contains(replica) ? 1 : 0)
+                    .description("Whether the replica currently serves read-only transactions")
+                    .tag("pool", pool)
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(HikariDataSource::close);
+        primary.close();
+    }
+
+    private class RoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            List<Integer> available = availableReplicas;
+            if (available.isEmpty()) {
+                return null;
+            }
+            return available.get(Math.floorMod(nextReplica.getAndIncrement(), available.size()));
+        }
+    }
+}
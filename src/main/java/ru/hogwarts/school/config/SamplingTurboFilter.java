@@ -0,0 +1,43 @@
+package ru.hogwarts.school.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets through only every {@code rate}-th DEBUG or TRACE event of each message
+ * template logged under {@code loggerPrefix}, starting with the first one, so
+ * enabling debug logging on a busy instance does not flood the appender. Events
+ * of disabled levels are left to the normal level check and are never counted.
+ */
+public class SamplingTurboFilter extends TurboFilter {
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private String loggerPrefix = "";
+    private int rate = 100;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (format == null
+                || level.isGreaterOrEqual(Level.INFO)
+                || !level.isGreaterOrEqual(logger.getEffectiveLevel())
+                || !logger.getName().startsWith(loggerPrefix)) {
+            return FilterReply.NEUTRAL;
+        }
+        long count = counters.computeIfAbsent(format, key -> new AtomicLong()).getAndIncrement();
+        return count % rate == 0 ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setLoggerPrefix(String loggerPrefix) {
+        this.loggerPrefix = loggerPrefix;
+    }
+
+    public void setRate(int rate) {
+        this.rate = Math.max(1, rate);
+    }
+}
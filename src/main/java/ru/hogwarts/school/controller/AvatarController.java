@@ -1,31 +1,36 @@
 package ru.hogwarts.school.controller;
 
-import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarFile;
 import ru.hogwarts.school.service.AvatarService;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
 @RequestMapping("avatar")
 public class AvatarController {
     private final AvatarService avatarService;
+    // the avatar URL stays the same across uploads, so caches revalidate it against the content hash every time
+    private final CacheControl avatarCacheControl = CacheControl.noCache().cachePublic();
+    private final CacheControl previewCacheControl;
+    private final CacheControl provisionalCacheControl = CacheControl.noStore();
 
     @Autowired
-    public AvatarController(AvatarService avatarService) {
+    public AvatarController(AvatarService avatarService, @Value("${avatar.cache.max-age}") Duration cacheMaxAge) {
         this.avatarService = avatarService;
+        this.previewCacheControl = CacheControl.maxAge(cacheMaxAge).cachePublic();
     }
 
 
@@ -40,29 +45,14 @@ public class AvatarController {
     }
 
     @GetMapping(value = "/{id}/avatar/preview")
-    public ResponseEntity<byte[]> downloadAvatar(@PathVariable Long id) {
-        Avatar avatar = avatarService.findAvatar(id);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.parseMediaType(avatar.getMediaType()));
-        headers.setContentLength(avatar.getData().length);
-
-        return ResponseEntity.status(HttpStatus.OK).headers(headers).body(avatar.getData());
+    public ResponseEntity<Resource> downloadAvatarPreview(@PathVariable Long id,
+                                                          @RequestParam(defaultValue = "100") int size) throws IOException {
+        return toResponse(avatarService.findAvatarPreview(id, size), previewCacheControl);
     }
 
     @GetMapping(value = "/{id}/avatar")
-    public void downloadAvatar(@PathVariable Long id, HttpServletResponse response) throws IOException {
-        Avatar avatar = avatarService.findAvatar(id);
-
-        Path path = Path.of(avatar.getFilePath());
-
-        try (InputStream is = Files.newInputStream(path);
-             OutputStream os = response.getOutputStream();) {
-            response.setStatus(200);
-            response.setContentType(avatar.getMediaType());
-            response.setContentLength((int) avatar.getFileSize());
-            is.transferTo(os);
-        }
+    public ResponseEntity<Resource> downloadAvatar(@PathVariable Long id) throws IOException {
+        return toResponse(avatarService.findAvatarFile(id), avatarCacheControl);
     }
 
     @GetMapping
@@ -70,4 +60,15 @@ public class AvatarController {
         List<Avatar> avatars = avatarService.getAllAvatars(pageNumber, pageSize);
         return ResponseEntity.ok(avatars);
     }
+
+    private ResponseEntity<Resource> toResponse(AvatarFile avatarFile, CacheControl cacheControl) throws IOException {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(avatarFile.mediaType()))
+                .lastModified(Files.getLastModifiedTime(avatarFile.path()).toMillis())
+                .cacheControl(avatarFile.provisional() ? provisionalCacheControl : cacheControl);
+        if (avatarFile.contentHash() != null) {
+            response.eTag(avatarFile.contentHash());
+        }
+        return response.body(new FileSystemResource(avatarFile.path()));
+    }
 }
@@ -1,33 +1,56 @@
 package ru.hogwarts.school.controller;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.FacultyPatch;
+import ru.hogwarts.school.dto.FacultyStats;
+import ru.hogwarts.school.dto.NameMatch;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.service.FacultyService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("faculties")
 public class FacultyController {
     private final FacultyService facultyService;
+    private final ObjectReader facultyReader;
+    private final CacheControl facultyCacheControl;
+    private final CacheControl aggregatesCacheControl;
 
-    private static final Logger logger = LoggerFactory.getLogger(FacultyController.class);
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final String TABLE = "faculties";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
 
-    public FacultyController(FacultyService facultyService) {
+    public FacultyController(FacultyService facultyService, ObjectMapper objectMapper,
+                             @Value("${faculties.cache.max-age}") Duration facultyMaxAge,
+                             @Value("${faculties.aggregates.cache.max-age}") Duration aggregatesMaxAge) {
         this.facultyService = facultyService;
+        this.facultyReader = objectMapper.readerFor(Faculty.class);
+        this.facultyCacheControl = CacheControl.maxAge(facultyMaxAge).mustRevalidate();
+        this.aggregatesCacheControl = CacheControl.maxAge(aggregatesMaxAge).mustRevalidate();
     }
 
     @GetMapping("{id}")
-    public ResponseEntity<Faculty> getFacultyInfo(@PathVariable Long id) {
+    public ResponseEntity<Faculty> getFacultyInfo(@PathVariable Long id, WebRequest request) {
         Faculty faculty = facultyService.findFaculty(id);
-        if (faculty == null) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.ok(faculty);
+        return VersionedResponses.conditional(request, TABLE + "-" + id, faculty.getVersion(), facultyCacheControl,
+                () -> faculty);
     }
 
     @PostMapping
@@ -36,7 +59,9 @@ public class FacultyController {
     }
 
     @PutMapping
-    public ResponseEntity<Faculty> editFaculty(@RequestBody Faculty faculty) {
+    public ResponseEntity<Faculty> editFaculty(@RequestBody Faculty faculty,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        faculty.setVersion(VersionedResponses.requireVersion(faculty.getVersion(), ifMatch, TABLE + "-" + faculty.getId()));
         Faculty foundFaculty = facultyService.editFaculty(faculty);
         if (foundFaculty == null) {
             return ResponseEntity.notFound().build();
@@ -44,33 +69,99 @@ public class FacultyController {
         return ResponseEntity.ok(foundFaculty);
     }
 
+    @PatchMapping("{id}")
+    public ResponseEntity<Void> patchFaculty(@PathVariable Long id, @RequestBody FacultyPatch patch) {
+        facultyService.patchFaculty(id, patch);
+        return ResponseEntity.noContent().build();
+    }
+
     @DeleteMapping("{id}")
     public String deleteFaculty(@PathVariable Long id) {
         facultyService.removeFaculty(id);
         return "Факультет с идентификатором " + id + " удален";
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchItemResult> createFaculties(@RequestBody List<Faculty> faculties) {
+        return facultyService.createFaculties(faculties);
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<BatchItemResult> importFaculties(InputStream body) throws IOException {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Faculty> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        try (MappingIterator<Faculty> faculties = facultyReader.readValues(body)) {
+            while (faculties.hasNextValue()) {
+                chunk.add(faculties.nextValue());
+                if (chunk.size() == IMPORT_CHUNK_SIZE || !faculties.hasNextValue()) {
+                    int offset = results.size();
+                    facultyService.createFaculties(chunk).forEach(result -> results.add(result.shift(offset)));
+                    chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Imports CSV with a {@code name,colour} header in a single transaction.
+     * Invalid rows are skipped and reported; the rest are inserted.
+     */
+    @PostMapping(value = "/batch", consumes = "text/csv")
+    public CsvImportResult importFacultiesCsv(InputStream body) {
+        return facultyService.importFacultiesCsv(body);
+    }
+
+    @GetMapping(value = "/stream", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> exportFacultiesCsv() {
+        StreamingResponseBody body = facultyService::exportFacultiesCsv;
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .body(body);
+    }
+
+    @PutMapping("/batch")
+    public List<BatchItemResult> editFaculties(@RequestBody List<Faculty> faculties) {
+        return facultyService.editFaculties(faculties);
+    }
+
+    @DeleteMapping("/batch")
+    public List<BatchItemResult> deleteFaculties(@RequestBody List<Long> ids) {
+        return facultyService.removeFaculties(ids);
+    }
+
     @GetMapping("/byColourOrName")
     public List<Faculty> findByColourIgnoreCaseOrNameIgnoreCase(@RequestParam(required = false) String colour, @RequestParam(required = false) String name) {
         return facultyService.findByColourIgnoreCaseOrNameIgnoreCase(colour, name);
     }
 
+    @GetMapping("/search-by-name")
+    public List<Faculty> searchFacultiesByName(@RequestParam String query,
+                                               @RequestParam(defaultValue = "PREFIX") NameMatch match,
+                                               @RequestParam(defaultValue = "0") int page,
+                                               @RequestParam(defaultValue = "20") int size) {
+        return facultyService.searchFacultiesByName(query, match, page, size);
+    }
+
     @GetMapping("/faculty/{name}")
     public Faculty findFacultyOfStudent(@PathVariable("name") String name) {
         return facultyService.findFacultyOfStudent(name);
     }
 
     @GetMapping("/longest-name")
-    public String getLongestFacultyName() {
-        return facultyService.getLongestFacultyName();
+    public ResponseEntity<String> getLongestFacultyName(WebRequest request) {
+        return VersionedResponses.conditional(request, TABLE, facultyService.getDataVersion(), aggregatesCacheControl,
+                facultyService::getLongestFacultyName);
+    }
+
+    @GetMapping("/stats")
+    public List<FacultyStats> getFacultyStats() {
+        return facultyService.getFacultyStats();
     }
 
     @GetMapping("/get-sum")
     public long getSum() {
-        long startTime = System.currentTimeMillis();
-        long sum = calculateSum(1000000);
-        logger.info("Время расчета {} мс", System.currentTimeMillis() - startTime);
-        return sum;
+        return calculateSum(1000000);
     }
 
     private static long calculateSum(long n) {
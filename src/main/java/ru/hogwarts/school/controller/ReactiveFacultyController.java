@@ -0,0 +1,35 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.model.FacultyRow;
+import ru.hogwarts.school.service.ReactiveFacultyService;
+
+@RestController
+@RequestMapping("reactive/faculties")
+@Profile("reactive")
+public class ReactiveFacultyController {
+    private final ReactiveFacultyService facultyService;
+
+    public ReactiveFacultyController(ReactiveFacultyService facultyService) {
+        this.facultyService = facultyService;
+    }
+
+    @GetMapping("{id}")
+    public Mono<FacultyRow> getFacultyInfo(@PathVariable long id) {
+        return facultyService.findFaculty(id);
+    }
+
+    @GetMapping("/byColourOrName")
+    public Flux<FacultyRow> findByColourIgnoreCaseOrNameIgnoreCase(@RequestParam(required = false) String colour,
+                                                                   @RequestParam(required = false) String name) {
+        return facultyService.findByColourIgnoreCaseOrNameIgnoreCase(colour, name);
+    }
+
+    @GetMapping("/faculty/{name}")
+    public Mono<FacultyRow> findFacultyOfStudent(@PathVariable("name") String name) {
+        return facultyService.findFacultyOfStudent(name);
+    }
+}
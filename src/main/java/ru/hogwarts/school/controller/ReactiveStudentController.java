@@ -0,0 +1,44 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.model.StudentRow;
+import ru.hogwarts.school.service.ReactiveStudentService;
+
+/**
+ * Non-blocking counterparts of the {@link StudentController} reads. The request thread
+ * is released while R2DBC runs the query. Lists are sent as one JSON array, or as
+ * newline-delimited JSON written row by row as the client consumes them.
+ */
+@RestController
+@RequestMapping("reactive/students")
+@Profile("reactive")
+public class ReactiveStudentController {
+    private final ReactiveStudentService studentService;
+
+    public ReactiveStudentController(ReactiveStudentService studentService) {
+        this.studentService = studentService;
+    }
+
+    @GetMapping("{id}")
+    public Mono<StudentRow> getStudentInfo(@PathVariable long id) {
+        return studentService.findStudent(id);
+    }
+
+    @GetMapping("/byAge")
+    public Flux<StudentRow> getStudentsByAge(@RequestParam int age) {
+        return studentService.findByAge(age);
+    }
+
+    @GetMapping("/byAgeBetween")
+    public Flux<StudentRow> getStudentsByAgeBetween(@RequestParam int min, @RequestParam int max) {
+        return studentService.findByAgeBetween(min, max);
+    }
+
+    @GetMapping("/byFaculty/{id}")
+    public Flux<StudentRow> findStudentsByFaculty(@PathVariable("id") long facultyId) {
+        return studentService.findByFaculty(facultyId);
+    }
+}
@@ -1,28 +1,62 @@
 package ru.hogwarts.school.controller;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.SortDefault;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.NameMatch;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.dto.StudentSearchCriteria;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.service.StudentService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequestMapping("students")
 public class StudentController {
     private final StudentService studentService;
-
-    public StudentController(StudentService studentService) {
+    private final ObjectWriter studentWriter;
+    private final ObjectReader studentReader;
+    private final CacheControl studentCacheControl;
+    private final CacheControl aggregatesCacheControl;
+
+    private static final int IMPORT_CHUNK_SIZE = 1000;
+    private static final String TABLE = "students";
+    private static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv;charset=UTF-8");
+
+    public StudentController(StudentService studentService, ObjectMapper objectMapper,
+                             @Value("${students.cache.max-age}") Duration studentMaxAge,
+                             @Value("${students.aggregates.cache.max-age}") Duration aggregatesMaxAge) {
         this.studentService = studentService;
+        this.studentWriter = objectMapper.writerFor(Student.class);
+        this.studentReader = objectMapper.readerFor(Student.class);
+        this.studentCacheControl = CacheControl.maxAge(studentMaxAge).mustRevalidate();
+        this.aggregatesCacheControl = CacheControl.maxAge(aggregatesMaxAge).mustRevalidate();
     }
 
     @GetMapping("{id}")
-    public ResponseEntity<Student> getStudentInfo(@PathVariable Long id) {
+    public ResponseEntity<Student> getStudentInfo(@PathVariable Long id, WebRequest request) {
         Student student = studentService.findStudent(id);
-        if (student == null) {
-            return ResponseEntity.notFound().build();
-        }
-        return ResponseEntity.ok(student);
+        return VersionedResponses.conditional(request, TABLE + "-" + id, student.getVersion(), studentCacheControl,
+                () -> student);
     }
 
     @PostMapping
@@ -31,7 +65,9 @@ public class StudentController {
     }
 
     @PutMapping
-    public ResponseEntity<Student> editStudent(@RequestBody Student student) {
+    public ResponseEntity<Student> editStudent(@RequestBody Student student,
+                                               @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        student.setVersion(VersionedResponses.requireVersion(student.getVersion(), ifMatch, TABLE + "-" + student.getId()));
         Student foundStudent = studentService.editStudent(student);
         if (foundStudent == null) {
             return ResponseEntity.notFound().build();
@@ -39,12 +75,63 @@ public class StudentController {
         return ResponseEntity.ok(foundStudent);
     }
 
+    @PatchMapping("{id}")
+    public ResponseEntity<Void> patchStudent(@PathVariable Long id, @RequestBody StudentPatch patch) {
+        studentService.patchStudent(id, patch);
+        return ResponseEntity.noContent().build();
+    }
+
     @DeleteMapping("{id}")
     public String deleteStudent(@PathVariable Long id) {
         studentService.removeStudent(id);
         return "Студент с идентификатором " + id + " удален";
     }
 
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<BatchItemResult> createStudents(@RequestBody List<Student> students) {
+        return studentService.createStudents(students);
+    }
+
+    /**
+     * Imports newline-delimited JSON. Each chunk of {@value #IMPORT_CHUNK_SIZE} students
+     * is committed separately, so a failure leaves earlier chunks in place.
+     */
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public List<BatchItemResult> importStudents(InputStream body) throws IOException {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Student> chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+        try (MappingIterator<Student> students = studentReader.readValues(body)) {
+            while (students.hasNextValue()) {
+                chunk.add(students.nextValue());
+                if (chunk.size() == IMPORT_CHUNK_SIZE || !students.hasNextValue()) {
+                    int offset = results.size();
+                    studentService.createStudents(chunk).forEach(result -> results.add(result.shift(offset)));
+                    chunk = new ArrayList<>(IMPORT_CHUNK_SIZE);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Imports CSV with a {@code name,age,faculty_id} header in a single transaction.
+     * Invalid rows are skipped and reported; the rest are inserted.
+     */
+    @PostMapping(value = "/batch", consumes = "text/csv")
+    public CsvImportResult importStudentsCsv(InputStream body) {
+        return studentService.importStudentsCsv(body);
+    }
+
+    @PutMapping("/batch")
+    public List<BatchItemResult> editStudents(@RequestBody List<Student> students) {
+        return studentService.editStudents(students);
+    }
+
+    @DeleteMapping("/batch")
+    public List<BatchItemResult> deleteStudents(@RequestBody List<Long> ids) {
+        return studentService.removeStudents(ids);
+    }
+
     @GetMapping("/byAge")
     public List<Student> getStudentsByAge(@RequestParam int age) {
         return studentService.findByAge(age);
@@ -60,19 +147,65 @@ public class StudentController {
         return studentService.findAllStudents();
     }
 
+    @GetMapping("/page")
+    public List<Student> getStudentsPage(@RequestParam(defaultValue = "0") Long afterId,
+                                         @RequestParam(defaultValue = "100") int size) {
+        return studentService.findStudentsPage(afterId, size);
+    }
+
+    @GetMapping("/search")
+    public List<Student> searchStudents(StudentSearchCriteria criteria,
+                                        @SortDefault("id") Sort sort,
+                                        @RequestParam(defaultValue = "100") int limit) {
+        return studentService.searchStudents(criteria, sort, limit);
+    }
+
+    @GetMapping("/search-by-name")
+    public List<Student> searchStudentsByName(@RequestParam String query,
+                                              @RequestParam(defaultValue = "PREFIX") NameMatch match,
+                                              @RequestParam(defaultValue = "0") int page,
+                                              @RequestParam(defaultValue = "20") int size) {
+        return studentService.searchStudentsByName(query, match, page, size);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllStudents() {
+        StreamingResponseBody body = outputStream -> studentService.streamAllStudents(student -> {
+            try {
+                outputStream.write(studentWriter.writeValueAsBytes(student));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(value = "/stream", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> exportStudentsCsv() {
+        StreamingResponseBody body = studentService::exportStudentsCsv;
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .body(body);
+    }
+
     @GetMapping("/byFaculty/{id}")
     public List<Student> findStudentsByFaculty(@PathVariable("id") Long facultyId) {
         return studentService.findByFaculty(facultyId);
     }
 
     @GetMapping("/all-students-count")
-    public Integer getAllStudentsCount() {
-        return studentService.getAllStudentsCount();
+    public ResponseEntity<Integer> getAllStudentsCount(WebRequest request) {
+        return VersionedResponses.conditional(request, TABLE, studentService.getDataVersion(), aggregatesCacheControl,
+                studentService::getAllStudentsCount);
     }
 
     @GetMapping("/avg-students-age")
-    public Integer getAverageStudentsAge() {
-        return studentService.getAverageStudentsAge();
+    public ResponseEntity<Integer> getAverageStudentsAge(WebRequest request) {
+        return VersionedResponses.conditional(request, TABLE, studentService.getDataVersion(), aggregatesCacheControl,
+                studentService::getAverageStudentsAge);
     }
 
     @GetMapping("/five-last-students")
@@ -85,6 +218,11 @@ public class StudentController {
         return studentService.getStudentNamesStartingWithA();
     }
 
+    @GetMapping("/names-starting-with/{letter}")
+    public List<String> getStudentNamesStartingWith(@PathVariable char letter) {
+        return studentService.getStudentNamesStartingWith(letter);
+    }
+
     @GetMapping("/average-age")
     public double getAverageAge() {
         return studentService.getAverageAge();
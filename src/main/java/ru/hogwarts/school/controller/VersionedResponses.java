@@ -0,0 +1,55 @@
+package ru.hogwarts.school.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+import ru.hogwarts.school.exceptions.VersionRequiredException;
+
+import java.util.function.Supplier;
+
+/**
+ * Builds read responses tagged with a version kept in the database: the row's
+ * {@code @Version} for a single entity, the change-feed position for aggregates.
+ * Every instance and replica therefore tags the same data alike. A request whose
+ * {@code If-None-Match} still matches is answered with 304 before the body is
+ * serialized and, for aggregates, before it is computed.
+ */
+final class VersionedResponses {
+    private VersionedResponses() {
+    }
+
+    static <T> ResponseEntity<T> conditional(WebRequest request, String tag, long version,
+                                             CacheControl cacheControl, Supplier<T> body) {
+        String eTag = "\"" + tag + "-" + version + "\"";
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(cacheControl)
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .body(body.get());
+    }
+
+    /**
+     * The version a replacing write is conditional on: the one in the body or, failing
+     * that, the one carried by an {@code If-Match} tag issued for the same record.
+     */
+    static long requireVersion(Long version, String ifMatch, String tag) {
+        if (version != null) {
+            return version;
+        }
+        String prefix = "\"" + tag + "-";
+        if (ifMatch != null && ifMatch.startsWith(prefix) && ifMatch.endsWith("\"")) {
+            try {
+                return Long.parseLong(ifMatch.substring(prefix.length(), ifMatch.length() - 1));
+            } catch (NumberFormatException ignored) {
+                // not one of our tags
+            }
+        }
+        throw new VersionRequiredException();
+    }
+}
@@ -0,0 +1,12 @@
+package ru.hogwarts.school.dto;
+
+public record BatchItemResult(int index, Long id, Status status) {
+
+    public enum Status {
+        CREATED, UPDATED, DELETED, NOT_FOUND, CONFLICT
+    }
+
+    public BatchItemResult shift(int offset) {
+        return new BatchItemResult(index + offset, id, status);
+    }
+}
@@ -0,0 +1,8 @@
+package ru.hogwarts.school.dto;
+
+import ru.hogwarts.school.model.ChangeType;
+
+import java.time.Instant;
+
+public record ChangeEvent(long position, String entity, long id, ChangeType type, Instant time) {
+}
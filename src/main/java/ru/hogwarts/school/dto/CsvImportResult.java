@@ -0,0 +1,17 @@
+package ru.hogwarts.school.dto;
+
+import java.util.List;
+
+/**
+ * Outcome of a CSV import. Rows are numbered from 1 after the header; only the first
+ * rejected rows are listed, the count covers all of them.
+ */
+public record CsvImportResult(long imported, long rejected, List<Rejection> rejections) {
+
+    public record Rejection(long row, String name, Reason reason) {
+    }
+
+    public enum Reason {
+        INVALID_NAME, INVALID_AGE, INVALID_COLOUR, UNKNOWN_FACULTY, DUPLICATE
+    }
+}
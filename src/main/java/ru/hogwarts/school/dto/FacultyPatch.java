@@ -0,0 +1,4 @@
+package ru.hogwarts.school.dto;
+
+public record FacultyPatch(String name, String colour, Long version) {
+}
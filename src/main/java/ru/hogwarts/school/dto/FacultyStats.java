@@ -0,0 +1,17 @@
+package ru.hogwarts.school.dto;
+
+public record FacultyStats(long facultyId, String name, long studentCount, Integer minAge, Integer maxAge,
+                           Double averageAge, long studentsWithAvatar, double avatarCoverage) {
+
+    public FacultyStats(Long facultyId, String name, Long studentCount, Integer minAge, Integer maxAge,
+                        Long ageSum, Long studentsWithAvatar) {
+        this(facultyId, name, orZero(studentCount), minAge, maxAge,
+                orZero(studentCount) == 0 ? null : (double) orZero(ageSum) / studentCount,
+                orZero(studentsWithAvatar),
+                orZero(studentCount) == 0 ? 0 : (double) orZero(studentsWithAvatar) / studentCount);
+    }
+
+    private static long orZero(Long value) {
+        return value == null ? 0 : value;
+    }
+}
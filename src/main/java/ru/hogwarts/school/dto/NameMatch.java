@@ -0,0 +1,18 @@
+package ru.hogwarts.school.dto;
+
+/**
+ * How a name search query is matched against lower-cased names.
+ */
+public enum NameMatch {
+    PREFIX,
+    SUBSTRING,
+    FUZZY;
+
+    /**
+     * Builds a LIKE pattern for a lower-cased query, escaping its wildcards with {@code \}.
+     */
+    public String likePattern(String query) {
+        String escaped = query.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        return this == PREFIX ? escaped + "%" : "%" + escaped + "%";
+    }
+}
@@ -0,0 +1,4 @@
+package ru.hogwarts.school.dto;
+
+public record StudentSearchCriteria(Integer minAge, Integer maxAge, Long facultyId, String namePrefix, Boolean hasAvatar) {
+}
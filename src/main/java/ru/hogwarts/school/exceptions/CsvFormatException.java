@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class CsvFormatException extends RuntimeException {
+    public CsvFormatException(String details) {
+        super("Некорректный CSV: " + details);
+    }
+}
@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class DatabaseBusyException extends RuntimeException {
+    public DatabaseBusyException(Throwable cause) {
+        super("Сервер перегружен, повторите запрос позже", cause);
+    }
+}
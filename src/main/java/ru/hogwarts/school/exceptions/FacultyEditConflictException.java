@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class FacultyEditConflictException extends RuntimeException {
+    public FacultyEditConflictException(long id) {
+        super("Факультет с id " + id + " уже изменен другим запросом, получите его заново и повторите изменение");
+    }
+}
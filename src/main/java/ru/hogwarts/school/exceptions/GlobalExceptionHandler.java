@@ -2,6 +2,8 @@ package ru.hogwarts.school.exceptions;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -24,6 +26,12 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(exception.getMessage());
     }
 
+    @ExceptionHandler(NoSuchAvatarException.class)
+    public ResponseEntity<String> handleNoSuchAvatar(NoSuchAvatarException exception) {
+        logger.error("No such avatar");
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(exception.getMessage());
+    }
+
     @ExceptionHandler(NoStudentsException.class)
     public ResponseEntity<String> handleNoStudents(NoStudentsException exception) {
         logger.error("No students");
@@ -35,4 +43,48 @@ public class GlobalExceptionHandler {
         logger.error("No faculties");
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(exception.getMessage());
     }
+
+    @ExceptionHandler(UnsupportedSortException.class)
+    public ResponseEntity<String> handleUnsupportedSort(UnsupportedSortException exception) {
+        logger.warn("Unsupported sort");
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(CsvFormatException.class)
+    public ResponseEntity<String> handleCsvFormat(CsvFormatException exception) {
+        logger.warn("Malformed CSV");
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(StudentEditConflictException.class)
+    public ResponseEntity<String> handleStudentEditConflict(StudentEditConflictException exception) {
+        logger.warn("Student edit conflict");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(FacultyEditConflictException.class)
+    public ResponseEntity<String> handleFacultyEditConflict(FacultyEditConflictException exception) {
+        logger.warn("Faculty edit conflict");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(VersionRequiredException.class)
+    public ResponseEntity<String> handleVersionRequired(VersionRequiredException exception) {
+        logger.warn("Version required");
+        return ResponseEntity.status(HttpStatus.PRECONDITION_REQUIRED).body(exception.getMessage());
+    }
+
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailure(OptimisticLockingFailureException exception) {
+        logger.warn("Optimistic locking failure");
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Данные уже изменены другим запросом, получите их заново и повторите изменение");
+    }
+
+    @ExceptionHandler(DatabaseBusyException.class)
+    public ResponseEntity<String> handleDatabaseBusy(DatabaseBusyException exception) {
+        logger.warn("Database busy");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(exception.getMessage());
+    }
 }
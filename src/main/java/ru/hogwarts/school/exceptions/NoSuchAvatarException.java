@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class NoSuchAvatarException extends RuntimeException {
+    public NoSuchAvatarException(long studentId) {
+        super("Аватар студента с id " + studentId + " не найден");
+    }
+}
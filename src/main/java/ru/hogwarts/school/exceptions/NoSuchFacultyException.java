@@ -4,4 +4,8 @@ public class NoSuchFacultyException extends RuntimeException {
     public NoSuchFacultyException(long id) {
         super("Факультет с id " + id + " не найден");
     }
+
+    public NoSuchFacultyException(String studentName) {
+        super("Факультет студента " + studentName + " не найден");
+    }
 }
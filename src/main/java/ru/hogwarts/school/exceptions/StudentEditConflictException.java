@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class StudentEditConflictException extends RuntimeException {
+    public StudentEditConflictException(long id) {
+        super("Студент с id " + id + " уже изменен другим запросом, получите его заново и повторите изменение");
+    }
+}
@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class UnsupportedSortException extends RuntimeException {
+    public UnsupportedSortException(String property) {
+        super("Сортировка по полю " + property + " не поддерживается");
+    }
+}
@@ -0,0 +1,7 @@
+package ru.hogwarts.school.exceptions;
+
+public class VersionRequiredException extends RuntimeException {
+    public VersionRequiredException() {
+        super("Укажите версию изменяемой записи в поле version или заголовке If-Match");
+    }
+}
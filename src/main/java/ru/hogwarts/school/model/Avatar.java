@@ -3,6 +3,8 @@ package ru.hogwarts.school.model;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 @Entity
@@ -14,17 +16,27 @@ public class Avatar {
     private String filePath;
     private String mediaType;
     private long fileSize;
-    @Lob
     @JsonIgnore
-    private byte[] data;
-    @OneToOne
+    private String contentKey;
+    @JsonIgnore
+    private String contentHash;
+    @JsonIgnore
+    @ElementCollection
+    @CollectionTable(name = "avatar_thumbnail", joinColumns = @JoinColumn(name = "avatar_id"))
+    @MapKeyColumn(name = "width")
+    @Column(name = "path", nullable = false)
+    private Map<Integer, String> thumbnails = new HashMap<>();
+    @JsonIgnore
+    private boolean thumbnailsPending;
+    @JsonIgnore
+    private int thumbnailAttempts;
+    @OneToOne(fetch = FetchType.LAZY)
     private Student student;
 
     public Avatar() {
     }
 
-    public Avatar(Long id, String filePath, String mediaType, byte[] data, long fileSize, Student student) {
-        this.data = data;
+    public Avatar(Long id, String filePath, String mediaType, long fileSize, Student student) {
         this.id = id;
         this.filePath = filePath;
         this.mediaType = mediaType;
@@ -76,12 +88,44 @@ public class Avatar {
         this.fileSize = fileSize;
     }
 
-    public byte[] getData() {
-        return data;
+    public String getContentKey() {
+        return contentKey;
+    }
+
+    public void setContentKey(String contentKey) {
+        this.contentKey = contentKey;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public Map<Integer, String> getThumbnails() {
+        return thumbnails;
+    }
+
+    public void setThumbnails(Map<Integer, String> thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    public boolean isThumbnailsPending() {
+        return thumbnailsPending;
+    }
+
+    public void setThumbnailsPending(boolean thumbnailsPending) {
+        this.thumbnailsPending = thumbnailsPending;
+    }
+
+    public int getThumbnailAttempts() {
+        return thumbnailAttempts;
     }
 
-    public void setData(byte[] data) {
-        this.data = data;
+    public void setThumbnailAttempts(int thumbnailAttempts) {
+        this.thumbnailAttempts = thumbnailAttempts;
     }
 
     public Student getStudent() {
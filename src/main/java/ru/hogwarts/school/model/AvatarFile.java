@@ -0,0 +1,13 @@
+package ru.hogwarts.school.model;
+
+import java.nio.file.Path;
+
+/**
+ * A stored avatar image. A provisional file stands in for a thumbnail that is still
+ * being generated and must not be cached as that thumbnail.
+ */
+public record AvatarFile(Path path, String mediaType, String contentHash, boolean provisional) {
+    public AvatarFile(Path path, String mediaType, String contentHash) {
+        this(path, mediaType, contentHash, false);
+    }
+}
@@ -0,0 +1,5 @@
+package ru.hogwarts.school.model;
+
+public enum ChangeType {
+    CREATED, UPDATED, DELETED
+}
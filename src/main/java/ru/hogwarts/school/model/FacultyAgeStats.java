@@ -0,0 +1,46 @@
+package ru.hogwarts.school.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+
+/**
+ * Number of students of one age in a faculty and how many of them have an avatar.
+ * The rows are maintained by database triggers on {@code student} and {@code avatar},
+ * so the application only reads them.
+ */
+@Entity
+@Immutable
+@IdClass(FacultyAgeStats.Key.class)
+@Table(name = "faculty_age_stats")
+public class FacultyAgeStats {
+    @Id
+    private Long facultyId;
+    @Id
+    private Integer age;
+    private long studentCount;
+    private long avatarCount;
+
+    public Long getFacultyId() {
+        return facultyId;
+    }
+
+    public Integer getAge() {
+        return age;
+    }
+
+    public long getStudentCount() {
+        return studentCount;
+    }
+
+    public long getAvatarCount() {
+        return avatarCount;
+    }
+
+    public record Key(Long facultyId, Integer age) implements Serializable {
+    }
+}
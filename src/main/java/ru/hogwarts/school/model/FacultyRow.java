@@ -0,0 +1,11 @@
+package ru.hogwarts.school.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Read-only R2DBC mapping of a faculty, serialized like {@link Faculty}.
+ */
+@Table("faculty")
+public record FacultyRow(@Id Long id, String name, String colour, Long version) {
+}
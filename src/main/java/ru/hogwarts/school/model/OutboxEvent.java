@@ -0,0 +1,63 @@
+package ru.hogwarts.school.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A change recorded in the same transaction as the write that caused it. The feed
+ * position stays empty until the relay publishes the event; positions follow commit
+ * order, so a consumer that resumes after a position never misses a change.
+ */
+@Entity
+@Table(name = "outbox_event")
+public class OutboxEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+    private String entity;
+    private Long entityId;
+    @Enumerated(EnumType.STRING)
+    private ChangeType changeType;
+    private Instant createdAt;
+    private Long feedPosition;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(String entity, Long entityId, ChangeType changeType, Instant createdAt) {
+        this.entity = entity;
+        this.entityId = entityId;
+        this.changeType = changeType;
+        this.createdAt = createdAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public ChangeType getChangeType() {
+        return changeType;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Long getFeedPosition() {
+        return feedPosition;
+    }
+
+    public void setFeedPosition(Long feedPosition) {
+        this.feedPosition = feedPosition;
+    }
+}
@@ -0,0 +1,38 @@
+package ru.hogwarts.school.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * The single row holding the last feed position handed out. Relays lock it for the
+ * whole publishing transaction, so only one instance assigns positions at a time.
+ */
+@Entity
+@Table(name = "outbox_relay")
+public class OutboxRelayState {
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+    private long lastPosition;
+
+    public OutboxRelayState() {
+    }
+
+    public OutboxRelayState(Integer id) {
+        this.id = id;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public long getLastPosition() {
+        return lastPosition;
+    }
+
+    public void setLastPosition(long lastPosition) {
+        this.lastPosition = lastPosition;
+    }
+}
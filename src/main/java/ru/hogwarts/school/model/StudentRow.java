@@ -0,0 +1,11 @@
+package ru.hogwarts.school.model;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * Read-only R2DBC mapping of a current student, serialized like {@link Student}.
+ */
+@Table("student")
+public record StudentRow(@Id Long id, String name, int age, Long version) {
+}
@@ -1,12 +1,38 @@
 package ru.hogwarts.school.repository;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import ru.hogwarts.school.model.Avatar;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface AvatarRepository extends JpaRepository<Avatar, Long> {
+    // avatars of soft-deleted students stay until the purge but are no longer served
+    @Query(value = "SELECT a FROM Avatar a JOIN FETCH a.student s WHERE s.deletedAt IS NULL",
+            countQuery = "SELECT COUNT(a) FROM Avatar a WHERE a.student.deletedAt IS NULL")
+    Page<Avatar> findAllOfCurrentStudents(Pageable pageable);
+
+    @Query("SELECT a FROM Avatar a WHERE a.student.id = :studentId AND a.student.deletedAt IS NULL")
     Optional<Avatar> findByStudentId(Long studentId);
 
-    void deleteByStudentId(Long id);
+    @Modifying
+    @Query("DELETE FROM Avatar a WHERE a.student.id IN :studentIds")
+    int deleteAllByStudentIdIn(Collection<Long> studentIds);
+
+    @Query("SELECT a.id FROM Avatar a WHERE a.thumbnailsPending = true AND a.thumbnailAttempts < :maxAttempts ORDER BY a.id")
+    List<Long> findIdsWithPendingThumbnails(int maxAttempts, Limit limit);
+
+    Optional<Avatar> findFirstByContentHashAndThumbnailsPendingFalse(String contentHash);
+
+    @Query(value = "SELECT content_key FROM avatar WHERE content_key IN (:keys)", nativeQuery = true)
+    List<String> findReferencedContentKeys(Collection<String> keys);
+
+    @Query(value = "SELECT path FROM avatar_thumbnail WHERE path IN (:paths)", nativeQuery = true)
+    List<String> findReferencedThumbnailPaths(Collection<String> paths);
 }
@@ -0,0 +1,168 @@
+package ru.hogwarts.school.repository;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.springframework.stereotype.Repository;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.exceptions.CsvFormatException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.hibernate.jpa.HibernateHints.HINT_NATIVE_SPACES;
+
+/**
+ * Moves CSV between the client and PostgreSQL with {@code COPY}, so rows stream
+ * through the connection and are never collected in the heap. Imports land in a
+ * temporary table of text columns, are checked there with set-based statements and
+ * merged into the real table, together with their outbox events, in one statement.
+ * The merge runs as a native query bound to the table's query space, which
+ * invalidates the cached queries on that table.
+ */
+@Repository
+public class CsvCopyRepository {
+    private static final String NUMBER = "'^\\s*[0-9]{1,9}\\s*$'";
+    private static final String LONG_NUMBER = "'^\\s*[0-9]{1,18}\\s*$'";
+    // faculty.name and faculty.colour are VARCHAR(255)
+    private static final int MAX_FACULTY_TEXT = 255;
+
+    private final EntityManager entityManager;
+
+    public CsvCopyRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    public void exportStudents(OutputStream out) {
+        copyOut("COPY (SELECT id, name, age, faculty_id FROM student WHERE deleted_at IS NULL ORDER BY id) " +
+                "TO STDOUT WITH (FORMAT csv, HEADER true)", out);
+    }
+
+    public void exportFaculties(OutputStream out) {
+        copyOut("COPY (SELECT id, name, colour FROM faculty ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER true)", out);
+    }
+
+    /**
+     * Imports {@code name,age,faculty_id} rows. A row is rejected when the name is blank,
+     * the age is not a number of at least 16 ({@code check_age}), the faculty does not
+     * exist, or the name is already taken by a current student or an earlier row.
+     */
+    public CsvImportResult importStudents(InputStream csv, int maxRejections) {
+        execute("CREATE TEMP TABLE student_import (line BIGINT GENERATED ALWAYS AS IDENTITY, " +
+                "name TEXT, age TEXT, faculty_id TEXT, rejection TEXT, id BIGINT) ON COMMIT DROP");
+        long rows = copyIn("COPY student_import (name, age, faculty_id) FROM STDIN WITH (FORMAT csv, HEADER true)", csv);
+        execute("UPDATE student_import i SET rejection = CASE " +
+                "WHEN i.name IS NULL OR btrim(i.name) = '' THEN 'INVALID_NAME' " +
+                "WHEN i.age IS NULL OR i.age !~ " + NUMBER + " THEN 'INVALID_AGE' " +
+                "WHEN i.age::integer < 16 THEN 'INVALID_AGE' " +
+                "WHEN i.faculty_id IS NULL OR btrim(i.faculty_id) = '' THEN NULL " +
+                "WHEN i.faculty_id !~ " + LONG_NUMBER + " THEN 'UNKNOWN_FACULTY' " +
+                "WHEN NOT EXISTS (SELECT 1 FROM faculty f WHERE f.id = i.faculty_id::bigint) THEN 'UNKNOWN_FACULTY' " +
+                "END");
+        execute("UPDATE student_import i SET rejection = 'DUPLICATE' " +
+                "FROM (SELECT line, row_number() OVER (PARTITION BY name ORDER BY line) AS occurrence " +
+                "FROM student_import WHERE rejection IS NULL) d " +
+                "WHERE d.line = i.line AND (d.occurrence > 1 " +
+                "OR EXISTS (SELECT 1 FROM student s WHERE s.name = i.name AND s.deleted_at IS NULL))");
+        long imported = merge("student", "student_import",
+                "INSERT INTO student (id, name, age, faculty_id, version) " +
+                "SELECT id, name, age::integer, NULLIF(btrim(faculty_id), '')::bigint, 0 " +
+                "FROM student_import WHERE rejection IS NULL ORDER BY line " +
+                "ON CONFLICT DO NOTHING RETURNING id");
+        return new CsvImportResult(imported, rows - imported, findRejections("student_import", maxRejections));
+    }
+
+    /**
+     * Imports {@code name,colour} rows. A row is rejected when either value is blank or
+     * longer than the column, or the pair already exists ({@code unique_colour}) or appeared in an earlier row.
+     */
+    public CsvImportResult importFaculties(InputStream csv, int maxRejections) {
+        execute("CREATE TEMP TABLE faculty_import (line BIGINT GENERATED ALWAYS AS IDENTITY, " +
+                "name TEXT, colour TEXT, rejection TEXT, id BIGINT) ON COMMIT DROP");
+        long rows = copyIn("COPY faculty_import (name, colour) FROM STDIN WITH (FORMAT csv, HEADER true)", csv);
+        execute("UPDATE faculty_import i SET rejection = CASE " +
+                "WHEN i.name IS NULL OR btrim(i.name) = '' OR length(i.name) > " + MAX_FACULTY_TEXT + " THEN 'INVALID_NAME' " +
+                "WHEN i.colour IS NULL OR btrim(i.colour) = '' OR length(i.colour) > " + MAX_FACULTY_TEXT + " THEN 'INVALID_COLOUR' " +
+                "END");
+        execute("UPDATE faculty_import i SET rejection = 'DUPLICATE' " +
+                "FROM (SELECT line, row_number() OVER (PARTITION BY name, colour ORDER BY line) AS occurrence " +
+                "FROM faculty_import WHERE rejection IS NULL) d " +
+                "WHERE d.line = i.line AND (d.occurrence > 1 " +
+                "OR EXISTS (SELECT 1 FROM faculty f WHERE f.name = i.name AND f.colour = i.colour))");
+        long imported = merge("faculty", "faculty_import",
+                "INSERT INTO faculty (id, name, colour, version) " +
+                "SELECT id, name, colour, 0 " +
+                "FROM faculty_import WHERE rejection IS NULL ORDER BY line " +
+                "ON CONFLICT DO NOTHING RETURNING id");
+        return new CsvImportResult(imported, rows - imported, findRejections("faculty_import", maxRejections));
+    }
+
+    /**
+     * Runs the insert and records a CREATED outbox event for every row it added. Each
+     * row takes a value of the pooled sequence of its own, so the ids never fall into
+     * a block Hibernate has reserved. The ids are assigned in the import table first:
+     * a row whose id did not make it into the table was skipped by {@code ON CONFLICT},
+     * because a concurrent import or edit took its name meanwhile, and is rejected as
+     * a duplicate.
+     */
+    private long merge(String table, String importTable, String insert) {
+        execute("UPDATE " + importTable + " i SET id = n.id " +
+                "FROM (SELECT line, nextval('" + table + "_seq') AS id FROM " + importTable +
+                " WHERE rejection IS NULL ORDER BY line) n WHERE n.line = i.line");
+        long imported = entityManager.createNativeQuery("WITH inserted AS (" + insert + ") " +
+                        "INSERT INTO outbox_event (id, entity, entity_id, change_type, created_at) " +
+                        "SELECT nextval('outbox_event_seq'), :entity, id, 'CREATED', now() FROM inserted")
+                .setParameter("entity", table)
+                .setHint(HINT_NATIVE_SPACES, table)
+                .executeUpdate();
+        execute("UPDATE " + importTable + " i SET rejection = 'DUPLICATE' " +
+                "WHERE i.rejection IS NULL AND NOT EXISTS (SELECT 1 FROM " + table + " t WHERE t.id = i.id)");
+        return imported;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<CsvImportResult.Rejection> findRejections(String importTable, int limit) {
+        List<Object[]> rows = entityManager.createNativeQuery("SELECT line, name, rejection FROM " + importTable +
+                        " WHERE rejection IS NOT NULL ORDER BY line LIMIT :limit")
+                .setParameter("limit", limit)
+                .getResultList();
+        return rows.stream()
+                .map(row -> new CsvImportResult.Rejection(((Number) row[0]).longValue(), (String) row[1],
+                        CsvImportResult.Reason.valueOf((String) row[2])))
+                .toList();
+    }
+
+    private void execute(String sql) {
+        entityManager.createNativeQuery(sql).executeUpdate();
+    }
+
+    private long copyIn(String sql, InputStream in) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try {
+                return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql, in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (SQLException e) {
+                // class 22: the data does not fit the columns, e.g. a row with extra fields
+                if (e.getSQLState() != null && e.getSQLState().startsWith("22")) {
+                    throw new CsvFormatException(e.getMessage());
+                }
+                throw e;
+            }
+        });
+    }
+
+    private void copyOut(String sql, OutputStream out) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            try {
+                connection.unwrap(PGConnection.class).getCopyAPI().copyOut(sql, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
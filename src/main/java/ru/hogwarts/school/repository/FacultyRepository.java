@@ -1,11 +1,53 @@
 package ru.hogwarts.school.repository;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import ru.hogwarts.school.dto.FacultyStats;
 import ru.hogwarts.school.model.Faculty;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
 
 public interface FacultyRepository extends JpaRepository<Faculty, Long> {
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("SELECT f FROM Faculty f WHERE LOWER(f.colour) = LOWER(:colour) OR LOWER(f.name) = LOWER(:name)")
     List<Faculty> findByColourIgnoreCaseOrNameIgnoreCase(String colour, String name);
 
+    @Query("SELECT f.id FROM Faculty f WHERE f.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Faculty f WHERE f.id IN :ids")
+    int deleteByIdIn(Collection<Long> ids);
+
+    @Query("SELECT s.faculty FROM Student s WHERE LOWER(s.name) = LOWER(:name)")
+    Optional<Faculty> findFacultyByStudentName(String name);
+
+    @Query("SELECT new ru.hogwarts.school.dto.FacultyStats(f.id, f.name, SUM(s.studentCount), " +
+            "MIN(CASE WHEN s.studentCount > 0 THEN s.age END), MAX(CASE WHEN s.studentCount > 0 THEN s.age END), " +
+            "SUM(s.age * s.studentCount), SUM(s.avatarCount)) " +
+            "FROM Faculty f LEFT JOIN FacultyAgeStats s ON s.facultyId = f.id GROUP BY f.id, f.name ORDER BY f.id")
+    List<FacultyStats> getFacultyStats();
+
+    @Query(value = "SELECT name FROM faculty ORDER BY LENGTH(name) DESC, id LIMIT 1", nativeQuery = true)
+    Optional<String> findLongestName();
+
+    @Query(value = "SELECT * FROM faculty WHERE lower(name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY length(name), lower(name), id", nativeQuery = true)
+    List<Faculty> findByNamePrefix(String pattern, Pageable pageable);
+
+    @Query(value = "SELECT * FROM faculty WHERE lower(name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY position(:query IN lower(name)), length(name), lower(name), id", nativeQuery = true)
+    List<Faculty> findByNameContaining(String pattern, String query, Pageable pageable);
+
+    @Query(value = "SELECT * FROM faculty WHERE lower(name) % :query " +
+            "ORDER BY similarity(lower(name), :query) DESC, lower(name), id", nativeQuery = true)
+    List<Faculty> findByNameSimilarTo(String query, Pageable pageable);
 }
@@ -0,0 +1,24 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import ru.hogwarts.school.model.OutboxEvent;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+    List<OutboxEvent> findByFeedPositionIsNullOrderByIdAsc(Limit limit);
+
+    List<OutboxEvent> findByFeedPositionGreaterThanOrderByFeedPositionAsc(long position, Limit limit);
+
+    @Query("SELECT MIN(e.feedPosition) FROM OutboxEvent e")
+    Optional<Long> findFirstPosition();
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.feedPosition IS NOT NULL AND e.createdAt < :threshold")
+    int deletePublishedBefore(Instant threshold);
+}
@@ -0,0 +1,15 @@
+package ru.hogwarts.school.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import ru.hogwarts.school.model.OutboxRelayState;
+
+import java.util.Optional;
+
+public interface OutboxRelayStateRepository extends JpaRepository<OutboxRelayState, Integer> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM OutboxRelayState s WHERE s.id = :id")
+    Optional<OutboxRelayState> findByIdForUpdate(Integer id);
+}
@@ -0,0 +1,16 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.model.FacultyRow;
+
+public interface ReactiveFacultyRepository extends R2dbcRepository<FacultyRow, Long> {
+    @Query("SELECT id, name, colour, version FROM faculty WHERE LOWER(colour) = LOWER(:colour) OR LOWER(name) = LOWER(:name) ORDER BY id")
+    Flux<FacultyRow> findByColourIgnoreCaseOrNameIgnoreCase(String colour, String name);
+
+    @Query("SELECT f.id, f.name, f.colour, f.version FROM faculty f JOIN student s ON s.faculty_id = f.id " +
+            "WHERE LOWER(s.name) = LOWER(:name) AND s.deleted_at IS NULL LIMIT 1")
+    Mono<FacultyRow> findFacultyByStudentName(String name);
+}
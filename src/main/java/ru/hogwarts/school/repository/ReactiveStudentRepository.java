@@ -0,0 +1,21 @@
+package ru.hogwarts.school.repository;
+
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.model.StudentRow;
+
+public interface ReactiveStudentRepository extends R2dbcRepository<StudentRow, Long> {
+    @Query("SELECT id, name, age, version FROM student WHERE id = :id AND deleted_at IS NULL")
+    Mono<StudentRow> findCurrentById(long id);
+
+    @Query("SELECT id, name, age, version FROM student WHERE age = :age AND deleted_at IS NULL ORDER BY id")
+    Flux<StudentRow> findByAge(int age);
+
+    @Query("SELECT id, name, age, version FROM student WHERE age BETWEEN :min AND :max AND deleted_at IS NULL ORDER BY id")
+    Flux<StudentRow> findByAgeBetween(int min, int max);
+
+    @Query("SELECT id, name, age, version FROM student WHERE faculty_id = :facultyId AND deleted_at IS NULL ORDER BY id")
+    Flux<StudentRow> findByFacultyId(long facultyId);
+}
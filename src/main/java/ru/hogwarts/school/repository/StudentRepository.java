@@ -1,26 +1,94 @@
 package ru.hogwarts.school.repository;
 
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import ru.hogwarts.school.model.Student;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface StudentRepository extends JpaRepository<Student, Long> {
+import static org.hibernate.jpa.HibernateHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.HibernateHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_NATIVE_SPACES;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
+
+public interface StudentRepository extends JpaRepository<Student, Long>, JpaSpecificationExecutor<Student> {
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Student> findByAge(int age);
 
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Student> findByAgeBetween(int min, int max);
 
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("SELECT s FROM Student s WHERE LOWER(s.name) = LOWER(:name)")
     Student findByNameIgnoreCase(String name);
 
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
     List<Student> findAllByFaculty_Id(Long facultyId);
 
-    @Query(value = "SELECT COUNT(*) FROM student", nativeQuery = true)
+    @Query("SELECT s.id FROM Student s WHERE s.id IN :ids")
+    List<Long> findExistingIds(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM Student s WHERE s.id IN :ids")
+    int deleteByIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE Student s SET s.deletedAt = :deletedAt, s.faculty = NULL WHERE s.id IN :ids AND s.deletedAt IS NULL")
+    int markDeleted(Collection<Long> ids, Instant deletedAt);
+
+    // soft-deleted rows are invisible to JPQL, so the purge has to go native
+    @Query(value = "SELECT id FROM student WHERE deleted_at < :threshold ORDER BY id LIMIT :limit", nativeQuery = true)
+    List<Long> findIdsDeletedBefore(Instant threshold, int limit);
+
+    @Modifying
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "student"))
+    @Query(value = "DELETE FROM student WHERE id IN (:ids) AND deleted_at IS NOT NULL", nativeQuery = true)
+    int purgeByIdIn(Collection<Long> ids);
+
+    List<Student> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("SELECT s FROM Student s ORDER BY s.id")
+    Stream<Student> streamAllOrderById();
+
+    @Query(value = "SELECT COUNT(*) FROM student WHERE deleted_at IS NULL", nativeQuery = true)
     Integer getAllStudentsCount();
 
-    @Query(value = "SELECT AVG(age) AS avgAge FROM student", nativeQuery = true)
+    @Query(value = "SELECT AVG(age) AS avgAge FROM student WHERE deleted_at IS NULL", nativeQuery = true)
     Integer getAverageStudentsAge();
 
-    @Query(value = "SELECT * FROM student ORDER BY id DESC LIMIT 5", nativeQuery = true)
+    @Query(value = "SELECT * FROM student WHERE deleted_at IS NULL ORDER BY id DESC LIMIT 5", nativeQuery = true)
     List<Student> getFiveLastStudents();
+
+    @Query("SELECT AVG(s.age) FROM Student s")
+    Double getAverageAge();
+
+    @Query("SELECT UPPER(s.name) FROM Student s WHERE LOWER(s.name) LIKE :pattern ESCAPE '\\' ORDER BY UPPER(s.name)")
+    List<String> findUpperCaseNamesStartingWith(String pattern);
+
+    @Query(value = "SELECT * FROM student WHERE deleted_at IS NULL AND lower(name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY length(name), lower(name), id", nativeQuery = true)
+    List<Student> findByNamePrefix(String pattern, Pageable pageable);
+
+    @Query(value = "SELECT * FROM student WHERE deleted_at IS NULL AND lower(name) LIKE :pattern ESCAPE '\\' " +
+            "ORDER BY position(:query IN lower(name)), length(name), lower(name), id", nativeQuery = true)
+    List<Student> findByNameContaining(String pattern, String query, Pageable pageable);
+
+    @Query(value = "SELECT * FROM student WHERE deleted_at IS NULL AND lower(name) % :query " +
+            "ORDER BY similarity(lower(name), :query) DESC, lower(name), id", nativeQuery = true)
+    List<Student> findByNameSimilarTo(String query, Pageable pageable);
 }
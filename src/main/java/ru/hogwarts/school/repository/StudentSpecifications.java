@@ -0,0 +1,47 @@
+package ru.hogwarts.school.repository;
+
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.springframework.data.jpa.domain.Specification;
+import ru.hogwarts.school.dto.NameMatch;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.Student;
+
+import java.util.Locale;
+
+/**
+ * Predicates for {@link StudentRepository#findBy}. Each one is written so that it can
+ * be answered from the indexes in the Liquibase changelog: age and faculty from the
+ * composite (faculty_id, age) and age indexes, name prefixes from lower(name).
+ */
+public final class StudentSpecifications {
+
+    private StudentSpecifications() {
+    }
+
+    public static Specification<Student> ageAtLeast(int minAge) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("age"), minAge);
+    }
+
+    public static Specification<Student> ageAtMost(int maxAge) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("age"), maxAge);
+    }
+
+    public static Specification<Student> inFaculty(long facultyId) {
+        return (root, query, cb) -> cb.equal(root.get("faculty").get("id"), facultyId);
+    }
+
+    public static Specification<Student> nameStartsWith(String prefix) {
+        String pattern = NameMatch.PREFIX.likePattern(prefix.trim().toLowerCase(Locale.ROOT));
+        return (root, query, cb) -> cb.like(cb.lower(root.get("name")), pattern, '\\');
+    }
+
+    public static Specification<Student> hasAvatar(boolean hasAvatar) {
+        return (root, query, cb) -> {
+            Subquery<Long> avatars = query.subquery(Long.class);
+            Root<Avatar> avatar = avatars.from(Avatar.class);
+            avatars.select(avatar.get("id")).where(cb.equal(avatar.get("student"), root));
+            return hasAvatar ? cb.exists(avatars) : cb.not(cb.exists(avatars));
+        };
+    }
+}
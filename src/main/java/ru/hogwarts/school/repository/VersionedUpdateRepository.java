@@ -0,0 +1,105 @@
+package ru.hogwarts.school.repository;
+
+import jakarta.persistence.CacheRetrieveMode;
+import jakarta.persistence.CacheStoreMode;
+import jakarta.persistence.EntityManager;
+import org.hibernate.cache.spi.TimestampsCache;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.stereotype.Repository;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Map;
+
+import static org.hibernate.jpa.SpecHints.HINT_SPEC_CACHE_RETRIEVE_MODE;
+import static org.hibernate.jpa.SpecHints.HINT_SPEC_CACHE_STORE_MODE;
+
+/**
+ * Edits a single student or faculty with one {@code UPDATE ... WHERE id = ? AND version = ?},
+ * so the version is compared by the database and not against a cached copy. The statement
+ * is run through the session's JDBC coordinator: as a JPQL or native bulk update Hibernate
+ * would empty the whole entity region of the second-level cache. Instead only the edited
+ * entry is evicted, now and after the transaction completes, and the cached queries on the
+ * table are invalidated the way Hibernate does for any write.
+ */
+@Repository
+public class VersionedUpdateRepository {
+    private final EntityManager entityManager;
+
+    public VersionedUpdateRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Sets the non-null values and increments the version. Without a version the
+     * current one is overwritten. Returns the number of rows changed, 0 or 1.
+     */
+    public int updateStudent(Long id, Long version, String name, Integer age) {
+        return update(Student.class, "student", id, version,
+                "name = COALESCE(?, name), age = COALESCE(?, age)", " AND deleted_at IS NULL",
+                new Value(name, Types.VARCHAR), new Value(age, Types.INTEGER));
+    }
+
+    public int updateFaculty(Long id, Long version, String name, String colour) {
+        return update(Faculty.class, "faculty", id, version,
+                "name = COALESCE(?, name), colour = COALESCE(?, colour)", "",
+                new Value(name, Types.VARCHAR), new Value(colour, Types.VARCHAR));
+    }
+
+    /**
+     * Reads the row as this transaction sees it, past the second-level cache, which
+     * must not receive uncommitted values.
+     */
+    public <T> T findCurrent(Class<T> type, Long id) {
+        return entityManager.find(type, id, Map.of(
+                HINT_SPEC_CACHE_RETRIEVE_MODE, CacheRetrieveMode.BYPASS,
+                HINT_SPEC_CACHE_STORE_MODE, CacheStoreMode.BYPASS));
+    }
+
+    private record Value(Object value, int sqlType) {
+    }
+
+    private int update(Class<?> type, String table, Long id, Long version, String assignments, String restriction,
+                       Value... values) {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        String[] spaces = {table};
+        // null when the query cache is off
+        TimestampsCache timestampsCache = session.getFactory().getCache().getTimestampsCache();
+        if (timestampsCache != null) {
+            timestampsCache.preInvalidate(spaces, session);
+        }
+        session.getActionQueue().registerProcess((success, completedSession) -> {
+            if (timestampsCache != null) {
+                timestampsCache.invalidate(spaces, completedSession);
+            }
+            completedSession.getFactory().getCache().evictEntityData(type, id);
+        });
+        String sql = "UPDATE " + table + " SET " + assignments + ", version = version + 1 WHERE id = ?"
+                + (version != null ? " AND version = ?" : "") + restriction;
+        JdbcCoordinator jdbcCoordinator = session.getJdbcCoordinator();
+        PreparedStatement statement = jdbcCoordinator.getStatementPreparer().prepareStatement(sql);
+        int updated;
+        try {
+            int index = 1;
+            for (Value value : values) {
+                statement.setObject(index++, value.value(), value.sqlType());
+            }
+            statement.setLong(index++, id);
+            if (version != null) {
+                statement.setLong(index, version);
+            }
+            updated = jdbcCoordinator.getResultSetReturn().executeUpdate(statement, sql);
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "could not update " + table, sql);
+        } finally {
+            jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbcCoordinator.afterStatementExecution();
+        }
+        session.getFactory().getCache().evictEntityData(type, id);
+        return updated;
+    }
+}
@@ -0,0 +1,118 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.hogwarts.school.config.ReplicaRouter;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache for dashboard aggregates (counts, averages, name indexes).
+ * Values are grouped by table; any write to a table bumps its version and
+ * drops every value computed for it, so the next read goes to the database once.
+ * Values expire after {@code ttl} regardless, which bounds how long writes made
+ * through other instances go unnoticed, unless a reader reports a newer change-feed
+ * position through {@link #observe}. With read replicas, values loaded within
+ * the tolerated replication lag of the last bump may come from a replica that has
+ * not applied the write yet, so they are returned but not cached.
+ */
+@Component
+public class AggregateCache {
+
+    public enum Region {
+        STUDENTS, FACULTIES
+    }
+
+    private record Entry(long version, long loadedAt, Object value) {
+    }
+
+    private final Map<Region, AtomicLong> versions = new EnumMap<>(Region.class);
+    private final Map<Region, AtomicLong> bumpedAt = new EnumMap<>(Region.class);
+    private final Map<Region, AtomicLong> positions = new EnumMap<>(Region.class);
+    private final Map<Region, Map<String, Entry>> entries = new EnumMap<>(Region.class);
+    private final long ttlNanos;
+    private final long replicaLagNanos;
+
+    @Autowired
+    public AggregateCache(@Value("${aggregate-cache.ttl}") Duration ttl,
+                          ObjectProvider<ReplicaRouter> replicaRouter,
+                          @Value("${datasource.replica.check-interval:5s}") Duration lagCheckInterval) {
+        this(ttl, replicaRouter.stream().findAny()
+                .map(router -> router.getMaxLag().plus(lagCheckInterval))
+                .orElse(Duration.ZERO));
+    }
+
+    public AggregateCache(Duration ttl, Duration replicaLag) {
+        this.ttlNanos = ttl.toNanos();
+        this.replicaLagNanos = replicaLag.toNanos();
+        long now = System.nanoTime();
+        for (Region region : Region.values()) {
+            versions.put(region, new AtomicLong());
+            bumpedAt.put(region, new AtomicLong(now - replicaLagNanos));
+            positions.put(region, new AtomicLong());
+            entries.put(region, new ConcurrentHashMap<>());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Region region, String key, Supplier<T> loader) {
+        long version = versions.get(region).get();
+        long now = System.nanoTime();
+        Entry entry = entries.get(region).get(key);
+        if (entry != null && entry.version() == version && now - entry.loadedAt() < ttlNanos) {
+            return (T) entry.value();
+        }
+        T value = loader.get();
+        if (value != null && now - bumpedAt.get(region).get() >= replicaLagNanos) {
+            entries.get(region).put(key, new Entry(version, now, value));
+        }
+        return value;
+    }
+
+    public long getVersion(Region region) {
+        return versions.get(region).get();
+    }
+
+    /**
+     * Records the change-feed position read from the database. A position this
+     * instance has not seen yet means the tables changed, possibly through another
+     * instance, so the region is dropped before the caller reads from it.
+     */
+    public void observe(Region region, long position) {
+        long previous = positions.get(region).getAndAccumulate(position, Math::max);
+        if (position > previous) {
+            bump(region);
+        }
+    }
+
+    /**
+     * Invalidates the region now and, when called inside a transaction, once more
+     * after commit so that values loaded from the pre-commit state are not kept.
+     */
+    public void invalidate(Region region) {
+        bump(region);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    bump(region);
+                }
+            });
+        }
+    }
+
+    private void bump(Region region) {
+        bumpedAt.get(region).set(System.nanoTime());
+        versions.get(region).incrementAndGet();
+        entries.get(region).clear();
+    }
+}
@@ -1,89 +1,164 @@
 package ru.hogwarts.school.service;
 
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
+import ru.hogwarts.school.exceptions.NoSuchAvatarException;
+import ru.hogwarts.school.exceptions.NoSuchStudentException;
 import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.AvatarFile;
+import ru.hogwarts.school.model.ChangeType;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.AvatarRepository;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.storage.ContentStore;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
-
-import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @Transactional
+@Timed(value = "school.service", histogram = true)
 public class AvatarService {
     private final AvatarRepository avatarRepository;
     private final StudentRepository studentRepository;
-    @Value("${path.to.avatars.folder}")
-    private String avatarsDir;
+    private final ContentStore contentStore;
+    private final ThumbnailService thumbnailService;
+    private final OutboxService outboxService;
+    private final DistributionSummary uploadSize;
 
     private static final Logger logger = LoggerFactory.getLogger(AvatarService.class);
 
-    public AvatarService(AvatarRepository avatarRepository, StudentRepository studentRepository) {
+    public AvatarService(AvatarRepository avatarRepository, StudentRepository studentRepository,
+                         ContentStore contentStore, ThumbnailService thumbnailService, OutboxService outboxService,
+                         MeterRegistry meterRegistry) {
         this.avatarRepository = avatarRepository;
         this.studentRepository = studentRepository;
+        this.contentStore = contentStore;
+        this.thumbnailService = thumbnailService;
+        this.outboxService = outboxService;
+        this.uploadSize = DistributionSummary.builder("avatar.upload.size")
+                .description("Size of uploaded avatar originals")
+                .baseUnit("bytes")
+                .register(meterRegistry);
     }
 
     public Avatar findAvatar(long studentId) {
-        logger.info("Finding avatar method invoked");
-        return avatarRepository.findByStudentId(studentId).orElse(new Avatar());
+        logger.debug("Finding avatar method invoked");
+        return avatarRepository.findByStudentId(studentId).orElseThrow(() -> new NoSuchAvatarException(studentId));
+    }
+
+    public AvatarFile findAvatarFile(long studentId) {
+        logger.debug("Finding avatar file method invoked");
+        return toAvatarFile(findAvatar(studentId));
+    }
+
+    public AvatarFile findAvatarPreview(long studentId, int width) {
+        logger.debug("Finding avatar preview method invoked");
+        Avatar avatar = findAvatar(studentId);
+        String thumbnailPath = avatar.getThumbnails().get(thumbnailService.resolveWidth(width));
+        if (thumbnailPath == null) {
+            // thumbnails are still being generated, the client scales the original meanwhile
+            AvatarFile original = toAvatarFile(avatar);
+            return new AvatarFile(original.path(), original.mediaType(), original.contentHash(), true);
+        }
+        return new AvatarFile(contentStore.resolve(thumbnailPath), avatar.getMediaType(),
+                contentStore.hashOf(thumbnailPath));
+    }
+
+    private AvatarFile toAvatarFile(Avatar avatar) {
+        if (avatar.getContentHash() == null) {
+            // avatars uploaded before content hashes were recorded, the thumbnail job fills the hash in
+            thumbnailService.scheduleAfterCommit(avatar.getId());
+        }
+        return new AvatarFile(contentStore.locate(avatar.getContentKey(), avatar.getFilePath()), avatar.getMediaType(),
+                avatar.getContentHash());
     }
 
     public void uploadAvatar(Long studentId, MultipartFile file) throws IOException {
-        logger.info("Uploading avatar method invoked");
-        Student student = studentRepository.getById(studentId);
-
-        Path filePath = Path.of(avatarsDir, student.getId() + "." + getExtension(file.getOriginalFilename()));
-        Files.createDirectories(filePath.getParent());
-        Files.deleteIfExists(filePath);
-
-        try (InputStream is = file.getInputStream();
-             OutputStream os = Files.newOutputStream(filePath, CREATE_NEW);
-             BufferedInputStream bis = new BufferedInputStream(is, 1024);
-             BufferedOutputStream bos = new BufferedOutputStream(os, 1024);
-        ) {
-            bis.transferTo(bos);
+        logger.debug("Uploading avatar method invoked");
+        uploadSize.record(file.getSize());
+        Student student = studentRepository.findById(studentId).orElseThrow(() -> new NoSuchStudentException(studentId));
+
+        String key;
+        try (InputStream is = file.getInputStream()) {
+            key = contentStore.store(is, getExtension(file.getOriginalFilename()));
         }
+        String contentHash = contentStore.hashOf(key);
 
         Avatar avatar = avatarRepository.findByStudentId(studentId).orElseGet(Avatar::new);
+        if (contentHash.equals(avatar.getContentHash())) {
+            return;
+        }
+        deleteLegacyFileAfterCommit(avatar);
         avatar.setStudent(student);
-        avatar.setFilePath(filePath.toString());
+        avatar.setContentKey(key);
+        avatar.setFilePath(contentStore.resolve(key).toString());
         avatar.setFileSize(file.getSize());
         avatar.setMediaType(file.getContentType());
-        avatar.setData(generateDataForDB(filePath));
+        avatar.setContentHash(contentHash);
+        avatar.getThumbnails().clear();
+        outboxService.record(OutboxService.AVATAR, ChangeType.UPDATED, studentId);
+
+        Optional<Avatar> sameContent = avatarRepository.findFirstByContentHashAndThumbnailsPendingFalse(contentHash);
+        if (sameContent.isPresent() && !sameContent.get().getThumbnails().isEmpty()
+                && reuseThumbnails(sameContent.get().getThumbnails())) {
+            avatar.getThumbnails().putAll(sameContent.get().getThumbnails());
+            avatar.setThumbnailsPending(false);
+            avatarRepository.save(avatar);
+            return;
+        }
+        avatar.setThumbnailsPending(true);
+        avatar.setThumbnailAttempts(0);
+        avatar = avatarRepository.save(avatar);
+        thumbnailService.scheduleAfterCommit(avatar.getId());
+    }
 
-        avatarRepository.save(avatar);
+    /**
+     * Thumbnails shared with another avatar get the same protection from the garbage
+     * collector as a deduplicated upload. If one is already gone they are generated again.
+     */
+    private boolean reuseThumbnails(Map<Integer, String> thumbnails) throws IOException {
+        for (String key : thumbnails.values()) {
+            if (!contentStore.reuse(key)) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private byte[] generateDataForDB(Path filePath) throws IOException {
-        logger.debug("Generating data for DB method invoked");
-        try (
-                InputStream is = Files.newInputStream(filePath);
-                BufferedInputStream bis = new BufferedInputStream(is, 1024);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            BufferedImage image = ImageIO.read(bis);
-
-            int height = image.getHeight() / (image.getWidth() / 100);
-            BufferedImage preview = new BufferedImage(100, height, image.getType());
-            Graphics2D graphics2D = preview.createGraphics();
-            graphics2D.drawImage(image, 0, 0, 100, height, null);
-            graphics2D.dispose();
-            ImageIO.write(preview, getExtension(filePath.getFileName().toString()), baos);
-            return baos.toByteArray();
+    /**
+     * Files written before the content store are named after the student and are
+     * not shared, so they can go once the avatar pointing elsewhere is committed.
+     */
+    private void deleteLegacyFileAfterCommit(Avatar avatar) {
+        if (avatar.getContentKey() != null || avatar.getFilePath() == null) {
+            return;
         }
+        Path legacyFile = Path.of(avatar.getFilePath());
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                try {
+                    Files.deleteIfExists(legacyFile);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete legacy avatar file {}", legacyFile, e);
+                }
+            }
+        });
     }
 
     private String getExtension(String fileName) {
@@ -91,9 +166,10 @@ public class AvatarService {
         return fileName.substring(fileName.lastIndexOf(".") + 1);
     }
 
+    @Transactional(readOnly = true)
     public List<Avatar> getAllAvatars(Integer pageNumber, Integer pageSize) {
-        logger.info("Getting all avatars method invoked");
+        logger.debug("Getting all avatars method invoked");
         PageRequest pageRequest = PageRequest.of(pageNumber - 1, pageSize);
-        return avatarRepository.findAll(pageRequest).getContent();
+        return avatarRepository.findAllOfCurrentStudents(pageRequest).getContent();
     }
 }
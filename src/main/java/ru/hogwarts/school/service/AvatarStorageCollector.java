@@ -0,0 +1,87 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.ContentStore;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Removes blobs from the content store that no avatar or thumbnail refers to.
+ * Only blobs untouched for the grace period are considered, which covers uploads
+ * whose transaction has not committed yet and thumbnails still being written.
+ * Each blob's modification time is checked again right before it is deleted,
+ * because an upload may deduplicate against it while its batch is being checked.
+ * References are looked up in a read-write transaction so they are read from the
+ * primary: a lagging replica may not show an avatar that already points to a blob.
+ */
+@Service
+public class AvatarStorageCollector {
+    private final AvatarRepository avatarRepository;
+    private final ContentStore contentStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gracePeriod;
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final Logger logger = LoggerFactory.getLogger(AvatarStorageCollector.class);
+
+    public AvatarStorageCollector(AvatarRepository avatarRepository, ContentStore contentStore,
+                                  PlatformTransactionManager transactionManager,
+                                  @Value("${avatar.storage.gc-grace-period}") Duration gracePeriod) {
+        this.avatarRepository = avatarRepository;
+        this.contentStore = contentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gracePeriod = gracePeriod;
+    }
+
+    @Scheduled(fixedDelayString = "${avatar.storage.gc-delay}", initialDelayString = "${avatar.storage.gc-delay}")
+    public void collectGarbage() throws IOException {
+        Instant threshold = Instant.now().minus(gracePeriod);
+        int deleted = 0;
+        try (Stream<String> keys = contentStore.keysOlderThan(threshold)) {
+            Iterator<String> iterator = keys.iterator();
+            List<String> batch = new ArrayList<>(BATCH_SIZE);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE || !iterator.hasNext()) {
+                    deleted += deleteUnreferenced(batch, threshold);
+                    batch.clear();
+                }
+            }
+        }
+        contentStore.deleteTempFilesOlderThan(threshold);
+        if (deleted > 0) {
+            logger.info("Deleted {} orphaned avatar files", deleted);
+        }
+    }
+
+    private int deleteUnreferenced(List<String> keys, Instant threshold) throws IOException {
+        Set<String> referenced = transactionTemplate.execute(status -> {
+            Set<String> references = new HashSet<>(avatarRepository.findReferencedThumbnailPaths(keys));
+            references.addAll(avatarRepository.findReferencedContentKeys(keys));
+            return references;
+        });
+        int deleted = 0;
+        for (String key : keys) {
+            if (!referenced.contains(key) && contentStore.deleteIfNotModifiedSince(key, threshold)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
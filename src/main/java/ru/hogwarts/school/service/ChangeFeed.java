@@ -0,0 +1,288 @@
+package ru.hogwarts.school.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.hogwarts.school.dto.ChangeEvent;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams published outbox events to Server-Sent Events subscribers. Every event
+ * carries its feed position as the SSE id, so a client reconnecting with
+ * {@code Last-Event-ID} continues where it stopped. One query per batch serves all
+ * subscribers of the instance, starting from the one furthest behind that still has
+ * room. Dispatching and sending run on the feed's own threads: each subscriber has
+ * a bounded queue drained by one sender at a time, so a slow client holds up neither
+ * the scheduler, the relay nor the other subscribers. A full queue pauses the
+ * subscriber, which is read further once it has drained; if its client has not taken
+ * a single event for the stall timeout, the stream is closed instead and the client
+ * resumes from its last event on reconnect. Streams are closed
+ * before the web server shuts down gracefully, which would otherwise wait for them;
+ * clients reconnect and resume.
+ */
+@Service
+public class ChangeFeed implements SmartLifecycle {
+    private final OutboxService outboxService;
+    private final Duration timeout;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final long stallTimeoutNanos;
+    private final Executor executor;
+    private final Counter dropped;
+    private final AtomicBoolean dispatchPending = new AtomicBoolean();
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private volatile boolean running;
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeFeed.class);
+
+    @Autowired
+    public ChangeFeed(OutboxService outboxService,
+                      @Value("${changes.sse.timeout}") Duration timeout,
+                      @Value("${changes.batch-size}") int batchSize,
+                      @Value("${changes.sse.queue-capacity}") int queueCapacity,
+                      @Value("${changes.sse.stall-timeout}") Duration stallTimeout,
+                      @Value("${changes.sse.threads}") int threads,
+                      MeterRegistry meterRegistry) {
+        this(outboxService, timeout, batchSize, queueCapacity, stallTimeout, new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), new CustomizableThreadFactory("changes-")),
+                meterRegistry);
+    }
+
+    public ChangeFeed(OutboxService outboxService, Duration timeout, int batchSize, int queueCapacity,
+                      Duration stallTimeout, Executor executor, MeterRegistry meterRegistry) {
+        this.outboxService = outboxService;
+        this.timeout = timeout;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.stallTimeoutNanos = stallTimeout.toNanos();
+        this.executor = executor;
+        this.dropped = Counter.builder("changes.subscribers.dropped")
+                .description("Change feed connections closed because the client stopped taking events")
+                .register(meterRegistry);
+        Gauge.builder("changes.subscribers", subscribers, List::size)
+                .description("Open change feed connections")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Subscribes to changes after the given position, or to new changes only when it
+     * is {@code null}. A position that has already been purged gets a {@code reset}
+     * event first: the client has to reload its data and then receives the changes
+     * that follow.
+     */
+    public SseEmitter subscribe(Long after) {
+        logger.debug("Subscribing to changes method invoked");
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        long position = after == null ? outboxService.getLastPosition() : after;
+        Subscriber subscriber = new Subscriber(emitter, position);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        long retainedPosition = outboxService.getRetainedPosition();
+        if (position < retainedPosition) {
+            subscriber.position = retainedPosition;
+            subscriber.send(SseEmitter.event()
+                    .id(String.valueOf(retainedPosition))
+                    .name("reset")
+                    .data(retainedPosition));
+        } else {
+            // commits the response, so the client sees the stream open before the first change
+            subscriber.send(SseEmitter.event().comment("after " + position));
+        }
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Requests a dispatch on the feed's threads. Wake-ups from the relay and the poll
+     * that arrive while one is already queued are served by it.
+     */
+    @Scheduled(fixedDelayString = "${changes.poll-delay}")
+    public void wake() {
+        if (!subscribers.isEmpty() && dispatchPending.compareAndSet(false, true)) {
+            executor.execute(this::dispatch);
+        }
+    }
+
+    private synchronized void dispatch() {
+        dispatchPending.set(false);
+        subscribers.forEach(Subscriber::closeIfStalled);
+        try {
+            OptionalLong from = subscribers.stream()
+                    .filter(subscriber -> !subscriber.paused)
+                    .mapToLong(subscriber -> subscriber.position)
+                    .min();
+            if (from.isEmpty()) {
+                return;
+            }
+            long position = from.getAsLong();
+            List<ChangeEvent> events;
+            boolean accepted;
+            do {
+                events = outboxService.findChangesAfter(position, batchSize);
+                accepted = false;
+                for (Subscriber subscriber : subscribers) {
+                    accepted |= subscriber.enqueue(events);
+                }
+                if (!events.isEmpty()) {
+                    position = events.get(events.size() - 1).position();
+                }
+            } while (events.size() == batchSize && accepted);
+        } catch (RuntimeException e) {
+            logger.warn("Could not dispatch changes, retrying on the next poll", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
+    }
+
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long lastSentAt = System.nanoTime();
+        private volatile boolean paused;
+        private volatile boolean stalled;
+        private volatile long position;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+
+        /**
+         * Queues the events this subscriber has not seen yet and tells whether it can
+         * take more.
+         */
+        boolean enqueue(List<ChangeEvent> events) {
+            if (paused || stalled) {
+                return false;
+            }
+            if (queue.isEmpty() && !draining.get()) {
+                // the stall clock only runs while events wait for the client
+                lastSentAt = System.nanoTime();
+            }
+            for (ChangeEvent event : events) {
+                if (event.position() <= position) {
+                    continue;
+                }
+                if (!queue.offer(SseEmitter.event()
+                        .id(String.valueOf(event.position()))
+                        .name("change")
+                        .data(event, MediaType.APPLICATION_JSON))) {
+                    paused = true;
+                    drainAsync();
+                    return false;
+                }
+                position = event.position();
+            }
+            drainAsync();
+            return true;
+        }
+
+        /**
+         * Closes the stream of a paused subscriber whose client has not taken an event
+         * for the stall timeout. The sender completes it, since completing here would
+         * wait for a send that may be stuck on the client.
+         */
+        void closeIfStalled() {
+            if (paused && !stalled && System.nanoTime() - lastSentAt > stallTimeoutNanos) {
+                logger.info("Change subscriber stopped taking events, closing its stream");
+                dropped.increment();
+                subscribers.remove(this);
+                stalled = true;
+                queue.clear();
+                drainAsync();
+            }
+        }
+
+        private void drainAsync() {
+            if ((stalled || paused || !queue.isEmpty()) && draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                SseEmitter.SseEventBuilder event;
+                while (!stalled && (event = queue.poll()) != null) {
+                    if (!send(event)) {
+                        queue.clear();
+                        return;
+                    }
+                    lastSentAt = System.nanoTime();
+                }
+                if (stalled) {
+                    emitter.complete();
+                    return;
+                }
+            } finally {
+                draining.set(false);
+            }
+            if (paused && queue.isEmpty()) {
+                // drained, read on from where the queue filled up
+                paused = false;
+                wake();
+            }
+            // events queued after the last poll but before the flag was cleared
+            drainAsync();
+        }
+
+        boolean send(SseEmitter.SseEventBuilder event) {
+            try {
+                emitter.send(event);
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                logger.debug("Change subscriber is gone", e);
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
@@ -1,77 +1,271 @@
 package ru.hogwarts.school.service;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.transaction.annotation.Transactional;
+import ru.hogwarts.school.config.Coalesced;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.FacultyPatch;
+import ru.hogwarts.school.dto.FacultyStats;
+import ru.hogwarts.school.dto.NameMatch;
+import ru.hogwarts.school.exceptions.FacultyEditConflictException;
 import ru.hogwarts.school.exceptions.NoFacultiesException;
 import ru.hogwarts.school.exceptions.NoSuchFacultyException;
+import ru.hogwarts.school.model.ChangeType;
 import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.repository.CsvCopyRepository;
 import ru.hogwarts.school.repository.FacultyRepository;
-import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.repository.VersionedUpdateRepository;
 
-import java.util.Comparator;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static ru.hogwarts.school.service.AggregateCache.Region.FACULTIES;
+import static ru.hogwarts.school.service.OutboxService.FACULTY;
 
 @Service
+@Timed(value = "school.service", histogram = true)
 public class FacultyService {
     private final FacultyRepository facultyRepository;
-    private final StudentRepository studentRepository;
+    private final AggregateCache aggregateCache;
+    private final EntityManager entityManager;
+    private final OutboxService outboxService;
+    private final CsvCopyRepository csvCopyRepository;
+    private final VersionedUpdateRepository versionedUpdateRepository;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int FLUSH_SIZE = 500;
+    private static final int MAX_CSV_REJECTIONS = 100;
 
     private static final Logger logger = LoggerFactory.getLogger(FacultyService.class);
 
-    public FacultyService(FacultyRepository facultyRepository, StudentRepository studentRepository) {
+    public FacultyService(FacultyRepository facultyRepository, AggregateCache aggregateCache,
+                          EntityManager entityManager, OutboxService outboxService,
+                          CsvCopyRepository csvCopyRepository, VersionedUpdateRepository versionedUpdateRepository) {
         this.facultyRepository = facultyRepository;
-        this.studentRepository = studentRepository;
+        this.aggregateCache = aggregateCache;
+        this.entityManager = entityManager;
+        this.outboxService = outboxService;
+        this.csvCopyRepository = csvCopyRepository;
+        this.versionedUpdateRepository = versionedUpdateRepository;
     }
 
+    @Transactional
     public Faculty createFaculty(Faculty faculty) {
-        logger.info("Creating faculty method invoked");
-        return facultyRepository.save(faculty);
+        logger.debug("Creating faculty method invoked");
+        Faculty createdFaculty = facultyRepository.save(faculty);
+        outboxService.record(FACULTY, ChangeType.CREATED, createdFaculty.getId());
+        aggregateCache.invalidate(FACULTIES);
+        return createdFaculty;
+    }
+
+    @Transactional
+    public List<BatchItemResult> createFaculties(List<Faculty> faculties) {
+        logger.debug("Creating faculties batch method invoked");
+        List<BatchItemResult> results = new ArrayList<>(faculties.size());
+        for (int i = 0; i < faculties.size(); i++) {
+            Faculty faculty = faculties.get(i);
+            faculty.setId(null);
+            entityManager.persist(faculty);
+            results.add(new BatchItemResult(i, faculty.getId(), BatchItemResult.Status.CREATED));
+            if ((i + 1) % FLUSH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        outboxService.record(FACULTY, ChangeType.CREATED, results.stream().map(BatchItemResult::id).toList());
+        aggregateCache.invalidate(FACULTIES);
+        return results;
+    }
+
+    @Transactional
+    public CsvImportResult importFacultiesCsv(InputStream csv) {
+        logger.debug("Importing faculties from CSV method invoked");
+        CsvImportResult result = csvCopyRepository.importFaculties(csv, MAX_CSV_REJECTIONS);
+        aggregateCache.invalidate(FACULTIES);
+        return result;
     }
 
+    @Transactional(readOnly = true)
+    public void exportFacultiesCsv(OutputStream out) {
+        logger.debug("Exporting faculties to CSV method invoked");
+        csvCopyRepository.exportFaculties(out);
+    }
+
+    /**
+     * Faculties are loaded and flushed in chunks of {@value #FLUSH_SIZE}, so the
+     * persistence context stays small for large batches.
+     */
+    @Transactional
+    public List<BatchItemResult> editFaculties(List<Faculty> faculties) {
+        logger.debug("Editing faculties batch method invoked");
+        List<BatchItemResult> results = new ArrayList<>(faculties.size());
+        for (int from = 0; from < faculties.size(); from += FLUSH_SIZE) {
+            List<Faculty> chunk = faculties.subList(from, Math.min(from + FLUSH_SIZE, faculties.size()));
+            Set<Long> ids = chunk.stream().map(Faculty::getId).filter(id -> id != null).collect(Collectors.toSet());
+            Map<Long, Faculty> existingFaculties = facultyRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Faculty::getId, Function.identity()));
+            for (int i = 0; i < chunk.size(); i++) {
+                Faculty faculty = chunk.get(i);
+                Faculty existingFaculty = existingFaculties.get(faculty.getId());
+                if (existingFaculty == null) {
+                    results.add(new BatchItemResult(from + i, faculty.getId(), BatchItemResult.Status.NOT_FOUND));
+                    continue;
+                }
+                if (faculty.getVersion() != null && !faculty.getVersion().equals(existingFaculty.getVersion())) {
+                    results.add(new BatchItemResult(from + i, faculty.getId(), BatchItemResult.Status.CONFLICT));
+                    continue;
+                }
+                existingFaculty.setName(faculty.getName());
+                existingFaculty.setColour(faculty.getColour());
+                results.add(new BatchItemResult(from + i, faculty.getId(), BatchItemResult.Status.UPDATED));
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }
+        outboxService.record(FACULTY, ChangeType.UPDATED, results.stream()
+                .filter(result -> result.status() == BatchItemResult.Status.UPDATED)
+                .map(BatchItemResult::id)
+                .toList());
+        aggregateCache.invalidate(FACULTIES);
+        return results;
+    }
+
+    @Transactional
+    public List<BatchItemResult> removeFaculties(List<Long> ids) {
+        logger.debug("Removing faculties batch method invoked");
+        Set<Long> existingIds = new HashSet<>(facultyRepository.findExistingIds(ids));
+        if (!existingIds.isEmpty()) {
+            facultyRepository.deleteByIdIn(existingIds);
+            outboxService.record(FACULTY, ChangeType.DELETED, existingIds);
+        }
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            BatchItemResult.Status status = existingIds.contains(ids.get(i))
+                    ? BatchItemResult.Status.DELETED
+                    : BatchItemResult.Status.NOT_FOUND;
+            results.add(new BatchItemResult(i, ids.get(i), status));
+        }
+        aggregateCache.invalidate(FACULTIES);
+        return results;
+    }
+
+    @Transactional(readOnly = true)
     public Faculty findFaculty(Long id) {
         logger.debug("Finding faculty method invoked");
         return facultyRepository.findById(id).orElseThrow(() -> new NoSuchFacultyException(id));
     }
 
+    @Transactional
     public Faculty editFaculty(Faculty faculty) {
-        logger.info("Editing faculty method invoked");
-        Optional<Faculty> existingFaculty = facultyRepository.findById(faculty.getId());
-        if (existingFaculty.isEmpty()) {
-            throw new NoSuchFacultyException(faculty.getId());
+        logger.debug("Editing faculty method invoked");
+        updateFaculty(faculty.getId(), new FacultyPatch(faculty.getName(), faculty.getColour(), faculty.getVersion()));
+        return versionedUpdateRepository.findCurrent(Faculty.class, faculty.getId());
+    }
+
+    @Transactional
+    public void patchFaculty(Long id, FacultyPatch patch) {
+        logger.debug("Patching faculty method invoked");
+        updateFaculty(id, patch);
+    }
+
+    /**
+     * Applies the change with a single conditional UPDATE. Only when no row matched is
+     * the table read again, to tell a missing faculty from a concurrent edit.
+     */
+    private void updateFaculty(Long id, FacultyPatch patch) {
+        int updated = versionedUpdateRepository.updateFaculty(id, patch.version(), patch.name(), patch.colour());
+        if (updated == 0) {
+            if (!facultyRepository.existsById(id)) {
+                throw new NoSuchFacultyException(id);
+            }
+            throw new FacultyEditConflictException(id);
         }
-        return facultyRepository.save(faculty);
+        outboxService.record(FACULTY, ChangeType.UPDATED, id);
+        aggregateCache.invalidate(FACULTIES);
     }
 
+    @Transactional
     public void removeFaculty(Long id) {
-        logger.info("Removing faculty method invoked");
-        Optional<Faculty> facultyOptional = facultyRepository.findById(id);
-        if (facultyOptional.isEmpty()) {
+        logger.debug("Removing faculty method invoked");
+        if (facultyRepository.deleteByIdIn(List.of(id)) == 0) {
             throw new NoSuchFacultyException(id);
         }
-        facultyRepository.deleteById(id);
+        outboxService.record(FACULTY, ChangeType.DELETED, id);
+        aggregateCache.invalidate(FACULTIES);
     }
 
+    @Transactional(readOnly = true)
     public List<Faculty> findByColourIgnoreCaseOrNameIgnoreCase(String colour, String name) {
-        logger.info("Finding faculty by colour method invoked");
+        logger.debug("Finding faculty by colour method invoked");
         return facultyRepository.findByColourIgnoreCaseOrNameIgnoreCase(colour, name);
     }
 
+    @Transactional(readOnly = true)
+    public List<Faculty> searchFacultiesByName(String query, NameMatch match, int page, int size) {
+        logger.debug("Searching faculties by name method invoked");
+        String normalizedQuery = query.trim().toLowerCase(Locale.ROOT);
+        if (normalizedQuery.isEmpty()) {
+            return List.of();
+        }
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        return switch (match) {
+            case PREFIX -> facultyRepository.findByNamePrefix(match.likePattern(normalizedQuery), pageable);
+            case SUBSTRING -> facultyRepository.findByNameContaining(match.likePattern(normalizedQuery), normalizedQuery, pageable);
+            case FUZZY -> facultyRepository.findByNameSimilarTo(normalizedQuery, pageable);
+        };
+    }
+
+    @Coalesced
+    @Transactional(readOnly = true)
     public Faculty findFacultyOfStudent(String name) {
-        logger.info("Find faculty of student method invoked");
-        return studentRepository.findByNameIgnoreCase(name).getFaculty();
+        logger.debug("Find faculty of student method invoked");
+        return facultyRepository.findFacultyByStudentName(name)
+                .orElseThrow(() -> new NoSuchFacultyException(name));
     }
 
+    @Transactional(readOnly = true)
     public String getLongestFacultyName() {
-        Optional<String> result = facultyRepository.findAll()
-                .stream()
-                .map(Faculty::getName)
-                .max(Comparator.comparingInt(String::length));
-        if (result.isEmpty()) {
+        logger.debug("Getting longest faculty name method invoked");
+        String longestName = aggregateCache.get(FACULTIES, "longestName",
+                () -> facultyRepository.findLongestName().orElse(null));
+        if (longestName == null) {
             throw new NoFacultiesException();
         }
-        return result.get();
+        return longestName;
+    }
+
+    /**
+     * Reads the per-age counters kept up to date by triggers, so the cost depends on the
+     * number of faculties and ages, not on the number of students.
+     */
+    @Transactional(readOnly = true)
+    public List<FacultyStats> getFacultyStats() {
+        logger.debug("Getting faculty stats method invoked");
+        return facultyRepository.getFacultyStats();
+    }
+
+    /**
+     * The change-feed position published so far. It is read from the database, so
+     * every instance tags the same data alike; aggregates cached before it are dropped.
+     */
+    public long getDataVersion() {
+        long position = outboxService.getLastPosition();
+        aggregateCache.observe(FACULTIES, position);
+        return position;
     }
 }
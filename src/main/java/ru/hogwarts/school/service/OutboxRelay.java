@@ -0,0 +1,56 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Publishes outbox events in batches, each in a short transaction of its own, and
+ * wakes the local {@link ChangeFeed}. Every instance runs a relay; the row lock in
+ * {@link OutboxService#publishPending} makes them take turns. Published events are
+ * kept for the retention period so that consumers can resume after an outage.
+ */
+@Service
+public class OutboxRelay {
+    private final OutboxService outboxService;
+    private final ChangeFeed changeFeed;
+    private final int batchSize;
+    private final Duration retention;
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    public OutboxRelay(OutboxService outboxService, ChangeFeed changeFeed,
+                       @Value("${changes.batch-size}") int batchSize,
+                       @Value("${changes.retention}") Duration retention) {
+        this.outboxService = outboxService;
+        this.changeFeed = changeFeed;
+        this.batchSize = batchSize;
+        this.retention = retention;
+    }
+
+    @Scheduled(fixedDelayString = "${changes.relay.delay}")
+    public void publishPending() {
+        int published = 0;
+        int batch;
+        do {
+            batch = outboxService.publishPending(batchSize);
+            published += batch;
+        } while (batch == batchSize);
+        if (published > 0) {
+            changeFeed.wake();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${changes.cleanup.delay}", initialDelayString = "${changes.cleanup.delay}")
+    public void deletePublishedEvents() {
+        int deleted = outboxService.deletePublishedBefore(Instant.now().minus(retention));
+        if (deleted > 0) {
+            logger.info("Deleted {} published outbox events", deleted);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.hogwarts.school.dto.ChangeEvent;
+import ru.hogwarts.school.model.ChangeType;
+import ru.hogwarts.school.model.OutboxEvent;
+import ru.hogwarts.school.model.OutboxRelayState;
+import ru.hogwarts.school.repository.OutboxEventRepository;
+import ru.hogwarts.school.repository.OutboxRelayStateRepository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes changes to the outbox within the caller's transaction and turns them into
+ * the change feed. Publishing assigns feed positions under a row lock on
+ * {@link OutboxRelayState}, so events are numbered in the order their transactions
+ * became visible rather than the order their ids were drawn.
+ */
+@Service
+public class OutboxService {
+    public static final String STUDENT = "student";
+    public static final String FACULTY = "faculty";
+    public static final String AVATAR = "avatar";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxRelayStateRepository relayStateRepository;
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxService.class);
+
+    public OutboxService(OutboxEventRepository outboxEventRepository, OutboxRelayStateRepository relayStateRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.relayStateRepository = relayStateRepository;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String entity, ChangeType type, Long id) {
+        record(entity, type, List.of(id));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String entity, ChangeType type, Collection<Long> ids) {
+        Instant now = Instant.now();
+        outboxEventRepository.saveAll(ids.stream()
+                .map(id -> new OutboxEvent(entity, id, type, now))
+                .toList());
+    }
+
+    @Transactional
+    public int publishPending(int batchSize) {
+        logger.debug("Publishing outbox events method invoked");
+        OutboxRelayState state = relayStateRepository.findByIdForUpdate(OutboxRelayState.ID)
+                .orElseGet(() -> relayStateRepository.save(new OutboxRelayState(OutboxRelayState.ID)));
+        List<OutboxEvent> events = outboxEventRepository.findByFeedPositionIsNullOrderByIdAsc(Limit.of(batchSize));
+        long position = state.getLastPosition();
+        for (OutboxEvent event : events) {
+            event.setFeedPosition(++position);
+        }
+        state.setLastPosition(position);
+        return events.size();
+    }
+
+    @Transactional(readOnly = true)
+    public List<ChangeEvent> findChangesAfter(long position, int limit) {
+        logger.debug("Finding changes after position method invoked");
+        return outboxEventRepository.findByFeedPositionGreaterThanOrderByFeedPositionAsc(position, Limit.of(limit)).stream()
+                .map(event -> new ChangeEvent(event.getFeedPosition(), event.getEntity(), event.getEntityId(),
+                        event.getChangeType(), event.getCreatedAt()))
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    public long getLastPosition() {
+        return relayStateRepository.findById(OutboxRelayState.ID).map(OutboxRelayState::getLastPosition).orElse(0L);
+    }
+
+    /**
+     * The position before the oldest change still kept; a consumer further behind
+     * has missed changes and must reload everything.
+     */
+    @Transactional(readOnly = true)
+    public long getRetainedPosition() {
+        return outboxEventRepository.findFirstPosition()
+                .map(position -> position - 1)
+                .orElseGet(this::getLastPosition);
+    }
+
+    @Transactional
+    public int deletePublishedBefore(Instant threshold) {
+        logger.debug("Deleting published outbox events method invoked");
+        return outboxEventRepository.deletePublishedBefore(threshold);
+    }
+}
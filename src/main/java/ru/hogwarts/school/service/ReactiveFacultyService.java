@@ -0,0 +1,42 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.exceptions.NoSuchFacultyException;
+import ru.hogwarts.school.model.FacultyRow;
+import ru.hogwarts.school.repository.ReactiveFacultyRepository;
+
+@Service
+@Profile("reactive")
+public class ReactiveFacultyService {
+    private final ReactiveFacultyRepository facultyRepository;
+    private final ReactiveReadTimeout readTimeout;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveFacultyService.class);
+
+    public ReactiveFacultyService(ReactiveFacultyRepository facultyRepository, ReactiveReadTimeout readTimeout) {
+        this.facultyRepository = facultyRepository;
+        this.readTimeout = readTimeout;
+    }
+
+    public Mono<FacultyRow> findFaculty(long id) {
+        logger.debug("Finding faculty reactively method invoked");
+        return readTimeout.apply(facultyRepository.findById(id))
+                .switchIfEmpty(Mono.error(() -> new NoSuchFacultyException(id)));
+    }
+
+    public Flux<FacultyRow> findByColourIgnoreCaseOrNameIgnoreCase(String colour, String name) {
+        logger.debug("Finding faculty by colour reactively method invoked");
+        return readTimeout.apply(facultyRepository.findByColourIgnoreCaseOrNameIgnoreCase(colour, name));
+    }
+
+    public Mono<FacultyRow> findFacultyOfStudent(String name) {
+        logger.debug("Finding faculty of student reactively method invoked");
+        return readTimeout.apply(facultyRepository.findFacultyByStudentName(name))
+                .switchIfEmpty(Mono.error(() -> new NoSuchFacultyException(name)));
+    }
+}
@@ -0,0 +1,45 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.exceptions.DatabaseBusyException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds how long a {@code /reactive} read may wait for the database. Under a burst
+ * the wait is spent queued for a pooled connection, and a read still queued when the
+ * servlet container's async timeout fires would be answered by that timeout instead.
+ * A read that gets no row in time, or no connection from the pool, ends with
+ * {@link DatabaseBusyException}, answered with 503. Only the first row is awaited: later
+ * rows of a stream arrive at the pace the client reads them.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveReadTimeout {
+    private final Duration timeout;
+
+    public ReactiveReadTimeout(@Value("${reactive.read-timeout}") Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    public <T> Mono<T> apply(Mono<T> row) {
+        return row.timeout(timeout)
+                .onErrorMap(ReactiveReadTimeout::isBusy, DatabaseBusyException::new);
+    }
+
+    public <T> Flux<T> apply(Flux<T> rows) {
+        return rows.timeout(Mono.delay(timeout), row -> Mono.never())
+                .onErrorMap(ReactiveReadTimeout::isBusy, DatabaseBusyException::new);
+    }
+
+    // the pool reports a connection it could not hand out within max-acquire-time this way
+    private static boolean isBusy(Throwable e) {
+        return e instanceof TimeoutException || e instanceof DataAccessResourceFailureException;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.exceptions.NoSuchStudentException;
+import ru.hogwarts.school.model.StudentRow;
+import ru.hogwarts.school.repository.ReactiveStudentRepository;
+
+@Service
+@Profile("reactive")
+public class ReactiveStudentService {
+    private final ReactiveStudentRepository studentRepository;
+    private final ReactiveReadTimeout readTimeout;
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveStudentService.class);
+
+    public ReactiveStudentService(ReactiveStudentRepository studentRepository, ReactiveReadTimeout readTimeout) {
+        this.studentRepository = studentRepository;
+        this.readTimeout = readTimeout;
+    }
+
+    public Mono<StudentRow> findStudent(long id) {
+        logger.debug("Finding student reactively method invoked");
+        return readTimeout.apply(studentRepository.findCurrentById(id))
+                .switchIfEmpty(Mono.error(() -> new NoSuchStudentException(id)));
+    }
+
+    public Flux<StudentRow> findByAge(int age) {
+        logger.debug("Finding student by age reactively method invoked");
+        return readTimeout.apply(studentRepository.findByAge(age));
+    }
+
+    public Flux<StudentRow> findByAgeBetween(int min, int max) {
+        logger.debug("Finding student by age between min and max reactively method invoked");
+        return readTimeout.apply(studentRepository.findByAgeBetween(min, max));
+    }
+
+    public Flux<StudentRow> findByFaculty(long facultyId) {
+        logger.debug("Finding students by faculty reactively method invoked");
+        return readTimeout.apply(studentRepository.findByFacultyId(facultyId));
+    }
+}
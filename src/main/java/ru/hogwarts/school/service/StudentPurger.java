@@ -0,0 +1,46 @@
+package ru.hogwarts.school.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Removes soft-deleted students once the retention period has passed. Every batch
+ * is a short transaction of its own, so a mass removal never holds long locks.
+ * Avatar files left without a row are deleted by {@link AvatarStorageCollector}.
+ */
+@Service
+public class StudentPurger {
+    private final StudentService studentService;
+    private final Duration retention;
+    private final int batchSize;
+
+    private static final Logger logger = LoggerFactory.getLogger(StudentPurger.class);
+
+    public StudentPurger(StudentService studentService,
+                         @Value("${students.purge.retention}") Duration retention,
+                         @Value("${students.purge.batch-size}") int batchSize) {
+        this.studentService = studentService;
+        this.retention = retention;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(fixedDelayString = "${students.purge.delay}", initialDelayString = "${students.purge.delay}")
+    public void purgeDeletedStudents() {
+        Instant deletedBefore = Instant.now().minus(retention);
+        int purged = 0;
+        int batch;
+        do {
+            batch = studentService.purgeDeletedStudents(deletedBefore, batchSize);
+            purged += batch;
+        } while (batch == batchSize);
+        if (purged > 0) {
+            logger.info("Purged {} deleted students", purged);
+        }
+    }
+}
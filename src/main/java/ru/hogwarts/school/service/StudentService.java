@@ -1,116 +1,397 @@
 package ru.hogwarts.school.service;
 
-import jakarta.transaction.Transactional;
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import ru.hogwarts.school.config.Coalesced;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.NameMatch;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.dto.StudentSearchCriteria;
 import ru.hogwarts.school.exceptions.NoStudentsException;
 import ru.hogwarts.school.exceptions.NoSuchStudentException;
+import ru.hogwarts.school.exceptions.StudentEditConflictException;
+import ru.hogwarts.school.exceptions.UnsupportedSortException;
+import ru.hogwarts.school.model.ChangeType;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.CsvCopyRepository;
 import ru.hogwarts.school.repository.FacultyRepository;
 import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.repository.StudentSpecifications;
+import ru.hogwarts.school.repository.VersionedUpdateRepository;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
-import java.util.OptionalDouble;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static ru.hogwarts.school.service.AggregateCache.Region.STUDENTS;
+import static ru.hogwarts.school.service.OutboxService.STUDENT;
 
 @Service
+@Timed(value = "school.service", histogram = true)
 public class StudentService {
     private final StudentRepository studentRepository;
     private final AvatarRepository avatarRepository;
+    private final EntityManager entityManager;
+    private final AggregateCache aggregateCache;
+    private final OutboxService outboxService;
+    private final CsvCopyRepository csvCopyRepository;
+    private final VersionedUpdateRepository versionedUpdateRepository;
+    private final boolean softDelete;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Set<String> SORTABLE_PROPERTIES = Set.of("id", "name", "age");
+    private static final int FLUSH_SIZE = 500;
+    private static final int MAX_CSV_REJECTIONS = 100;
 
     private static final Logger logger = LoggerFactory.getLogger(StudentService.class);
 
-    public StudentService(StudentRepository studentRepository, FacultyRepository facultyRepository, AvatarRepository avatarRepository) {
+    public StudentService(StudentRepository studentRepository, FacultyRepository facultyRepository, AvatarRepository avatarRepository,
+                          EntityManager entityManager, AggregateCache aggregateCache, OutboxService outboxService,
+                          CsvCopyRepository csvCopyRepository, VersionedUpdateRepository versionedUpdateRepository,
+                          @Value("${students.soft-delete.enabled}") boolean softDelete) {
         this.studentRepository = studentRepository;
         this.avatarRepository = avatarRepository;
+        this.entityManager = entityManager;
+        this.aggregateCache = aggregateCache;
+        this.outboxService = outboxService;
+        this.csvCopyRepository = csvCopyRepository;
+        this.versionedUpdateRepository = versionedUpdateRepository;
+        this.softDelete = softDelete;
     }
 
+    @Transactional
     public Student createStudent(Student student) {
-        logger.info("Creating student method invoked");
-        return studentRepository.save(student);
+        logger.debug("Creating student method invoked");
+        Student createdStudent = studentRepository.save(student);
+        outboxService.record(STUDENT, ChangeType.CREATED, createdStudent.getId());
+        aggregateCache.invalidate(STUDENTS);
+        return createdStudent;
+    }
+
+    @Transactional
+    public List<BatchItemResult> createStudents(List<Student> students) {
+        logger.debug("Creating students batch method invoked");
+        List<BatchItemResult> results = new ArrayList<>(students.size());
+        for (int i = 0; i < students.size(); i++) {
+            Student student = students.get(i);
+            student.setId(null);
+            entityManager.persist(student);
+            results.add(new BatchItemResult(i, student.getId(), BatchItemResult.Status.CREATED));
+            if ((i + 1) % FLUSH_SIZE == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        outboxService.record(STUDENT, ChangeType.CREATED, results.stream().map(BatchItemResult::id).toList());
+        aggregateCache.invalidate(STUDENTS);
+        return results;
     }
 
+    @Transactional
+    public CsvImportResult importStudentsCsv(InputStream csv) {
+        logger.debug("Importing students from CSV method invoked");
+        CsvImportResult result = csvCopyRepository.importStudents(csv, MAX_CSV_REJECTIONS);
+        aggregateCache.invalidate(STUDENTS);
+        return result;
+    }
+
+    /**
+     * Updates name and age like {@link #editStudent(Student)}. The faculty is not part
+     * of the JSON representation of a student and is left unchanged; it is assigned
+     * through the CSV import. Students are loaded and flushed in chunks of
+     * {@value #FLUSH_SIZE}, so the persistence context stays small for large batches.
+     */
+    @Transactional
+    public List<BatchItemResult> editStudents(List<Student> students) {
+        logger.debug("Editing students batch method invoked");
+        List<BatchItemResult> results = new ArrayList<>(students.size());
+        for (int from = 0; from < students.size(); from += FLUSH_SIZE) {
+            List<Student> chunk = students.subList(from, Math.min(from + FLUSH_SIZE, students.size()));
+            Set<Long> ids = chunk.stream().map(Student::getId).filter(id -> id != null).collect(Collectors.toSet());
+            Map<Long, Student> existingStudents = studentRepository.findAllById(ids).stream()
+                    .collect(Collectors.toMap(Student::getId, Function.identity()));
+            for (int i = 0; i < chunk.size(); i++) {
+                Student student = chunk.get(i);
+                Student existingStudent = existingStudents.get(student.getId());
+                if (existingStudent == null) {
+                    results.add(new BatchItemResult(from + i, student.getId(), BatchItemResult.Status.NOT_FOUND));
+                    continue;
+                }
+                if (student.getVersion() != null && !student.getVersion().equals(existingStudent.getVersion())) {
+                    results.add(new BatchItemResult(from + i, student.getId(), BatchItemResult.Status.CONFLICT));
+                    continue;
+                }
+                existingStudent.setName(student.getName());
+                existingStudent.setAge(student.getAge());
+                results.add(new BatchItemResult(from + i, student.getId(), BatchItemResult.Status.UPDATED));
+            }
+            entityManager.flush();
+            entityManager.clear();
+        }
+        outboxService.record(STUDENT, ChangeType.UPDATED, results.stream()
+                .filter(result -> result.status() == BatchItemResult.Status.UPDATED)
+                .map(BatchItemResult::id)
+                .toList());
+        aggregateCache.invalidate(STUDENTS);
+        return results;
+    }
+
+    @Transactional
+    public List<BatchItemResult> removeStudents(List<Long> ids) {
+        logger.debug("Removing students batch method invoked");
+        Set<Long> existingIds = new HashSet<>(studentRepository.findExistingIds(ids));
+        if (!existingIds.isEmpty()) {
+            deleteStudents(existingIds);
+        }
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            BatchItemResult.Status status = existingIds.contains(ids.get(i))
+                    ? BatchItemResult.Status.DELETED
+                    : BatchItemResult.Status.NOT_FOUND;
+            results.add(new BatchItemResult(i, ids.get(i), status));
+        }
+        aggregateCache.invalidate(STUDENTS);
+        return results;
+    }
+
+    @Coalesced
+    @Transactional(readOnly = true)
     public Student findStudent(Long id) {
         logger.debug("Finding student method invoked");
             return studentRepository.findById(id).orElseThrow(() -> new NoSuchStudentException(id));
     }
 
+    @Transactional(readOnly = true)
     public List<Student> findAllStudents() {
         logger.debug("Getting all students method invoked");
         return studentRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
+    public List<Student> findStudentsPage(Long afterId, int size) {
+        logger.debug("Getting students page method invoked");
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        return studentRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(limit));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Student> searchStudentsByName(String query, NameMatch match, int page, int size) {
+        logger.debug("Searching students by name method invoked");
+        String normalizedQuery = query.trim().toLowerCase(Locale.ROOT);
+        if (normalizedQuery.isEmpty()) {
+            return List.of();
+        }
+        Pageable pageable = PageRequest.of(Math.max(0, page), Math.max(1, Math.min(size, MAX_PAGE_SIZE)));
+        return switch (match) {
+            case PREFIX -> studentRepository.findByNamePrefix(match.likePattern(normalizedQuery), pageable);
+            case SUBSTRING -> studentRepository.findByNameContaining(match.likePattern(normalizedQuery), normalizedQuery, pageable);
+            case FUZZY -> studentRepository.findByNameSimilarTo(normalizedQuery, pageable);
+        };
+    }
+
+    @Transactional(readOnly = true)
+    public List<Student> searchStudents(StudentSearchCriteria criteria, Sort sort, int limit) {
+        logger.debug("Searching students by criteria method invoked");
+        for (Sort.Order order : sort) {
+            if (!SORTABLE_PROPERTIES.contains(order.getProperty())) {
+                throw new UnsupportedSortException(order.getProperty());
+            }
+        }
+        List<Specification<Student>> specifications = new ArrayList<>();
+        if (criteria.minAge() != null) {
+            specifications.add(StudentSpecifications.ageAtLeast(criteria.minAge()));
+        }
+        if (criteria.maxAge() != null) {
+            specifications.add(StudentSpecifications.ageAtMost(criteria.maxAge()));
+        }
+        if (criteria.facultyId() != null) {
+            specifications.add(StudentSpecifications.inFaculty(criteria.facultyId()));
+        }
+        if (criteria.namePrefix() != null && !criteria.namePrefix().isBlank()) {
+            specifications.add(StudentSpecifications.nameStartsWith(criteria.namePrefix()));
+        }
+        if (criteria.hasAvatar() != null) {
+            specifications.add(StudentSpecifications.hasAvatar(criteria.hasAvatar()));
+        }
+        Sort stableSort = sort.getOrderFor("id") == null ? sort.and(Sort.by("id")) : sort;
+        int maxResults = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return studentRepository.findBy(Specification.allOf(specifications),
+                query -> query.sortBy(stableSort).limit(maxResults).all());
+    }
+
+    @Transactional(readOnly = true)
+    public void streamAllStudents(Consumer<Student> consumer) {
+        logger.debug("Streaming all students method invoked");
+        try (Stream<Student> students = studentRepository.streamAllOrderById()) {
+            students.forEach(student -> {
+                consumer.accept(student);
+                entityManager.detach(student);
+            });
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void exportStudentsCsv(OutputStream out) {
+        logger.debug("Exporting students to CSV method invoked");
+        csvCopyRepository.exportStudents(out);
+    }
+
+    @Transactional
     public Student editStudent(Student student) {
-        logger.info("Editing student method invoked");
-        Optional<Student> existingStudent = studentRepository.findById(student.getId());
-        if (existingStudent.isEmpty()) {
-            throw new NoSuchStudentException(student.getId());
+        logger.debug("Editing student method invoked");
+        updateStudent(student.getId(), new StudentPatch(student.getName(), student.getAge(), student.getVersion()));
+        return versionedUpdateRepository.findCurrent(Student.class, student.getId());
+    }
+
+    @Transactional
+    public void patchStudent(Long id, StudentPatch patch) {
+        logger.debug("Patching student method invoked");
+        updateStudent(id, patch);
+    }
+
+    /**
+     * Applies the change with a single conditional UPDATE. Only when no row matched is
+     * the table read again, to tell a missing student from a concurrent edit.
+     */
+    private void updateStudent(Long id, StudentPatch patch) {
+        int updated = versionedUpdateRepository.updateStudent(id, patch.version(), patch.name(), patch.age());
+        if (updated == 0) {
+            if (!studentRepository.existsById(id)) {
+                throw new NoSuchStudentException(id);
+            }
+            throw new StudentEditConflictException(id);
         }
-        return studentRepository.save(student);
+        outboxService.record(STUDENT, ChangeType.UPDATED, id);
+        aggregateCache.invalidate(STUDENTS);
     }
 
     @Transactional
     public void removeStudent(Long id) {
-        logger.info("Removing student method invoked");
-        Optional<Student> studentOptional = studentRepository.findById(id);
-        if (studentOptional.isEmpty()) {
+        logger.debug("Removing student method invoked");
+        if (deleteStudents(List.of(id)) == 0) {
             throw new NoSuchStudentException(id);
         }
-        avatarRepository.deleteByStudentId(id);
-        studentRepository.deleteById(id);
+        aggregateCache.invalidate(STUDENTS);
     }
 
+    /**
+     * Deletes with bulk statements only. In soft-delete mode the rows are just marked,
+     * which hides them at once; {@link StudentPurger} removes them later in batches.
+     */
+    private int deleteStudents(Collection<Long> ids) {
+        int deleted;
+        if (softDelete) {
+            deleted = studentRepository.markDeleted(ids, Instant.now());
+        } else {
+            avatarRepository.deleteAllByStudentIdIn(ids);
+            deleted = studentRepository.deleteByIdIn(ids);
+        }
+        if (deleted > 0) {
+            outboxService.record(STUDENT, ChangeType.DELETED, ids);
+        }
+        return deleted;
+    }
+
+    @Transactional
+    public int purgeDeletedStudents(Instant deletedBefore, int batchSize) {
+        logger.debug("Purging deleted students method invoked");
+        List<Long> ids = studentRepository.findIdsDeletedBefore(deletedBefore, batchSize);
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        avatarRepository.deleteAllByStudentIdIn(ids);
+        return studentRepository.purgeByIdIn(ids);
+    }
+
+    @Transactional(readOnly = true)
     public List<Student> findByAge(int age) {
         logger.debug("Finding student by age method invoked");
         return studentRepository.findByAge(age);
     }
 
+    @Transactional(readOnly = true)
     public List<Student> findByAgeBetween(int min, int max) {
-        logger.info("Finding student by age between min and max method invoked");
+        logger.debug("Finding student by age between min and max method invoked");
         return studentRepository.findByAgeBetween(min, max);
     }
 
+    @Transactional(readOnly = true)
     public List<Student> findByFaculty(Long facultyId) {
-        logger.info("Finding students by faculty method invoked");
+        logger.debug("Finding students by faculty method invoked");
         return studentRepository.findAllByFaculty_Id(facultyId);
     }
 
+    @Transactional(readOnly = true)
     public Integer getAllStudentsCount() {
-        logger.info("Getting all students count method invoked");
-        return studentRepository.getAllStudentsCount();
+        logger.debug("Getting all students count method invoked");
+        return aggregateCache.get(STUDENTS, "count", studentRepository::getAllStudentsCount);
     }
 
+    @Coalesced
+    @Transactional(readOnly = true)
     public Integer getAverageStudentsAge() {
-        logger.info("Getting average students age method invoked");
-        return studentRepository.getAverageStudentsAge();
+        logger.debug("Getting average students age method invoked");
+        return aggregateCache.get(STUDENTS, "avgAge", studentRepository::getAverageStudentsAge);
     }
 
+    @Transactional(readOnly = true)
     public List<Student> getFiveLastStudents() {
-        logger.info("Getting last five students method invoked");
+        logger.debug("Getting last five students method invoked");
         return studentRepository.getFiveLastStudents();
     }
 
     public List<String> getStudentNamesStartingWithA() {
-        return studentRepository.findAll()
-                .stream()
-                .map(student -> student.getName().toUpperCase())
-                .filter(name -> name.startsWith("A"))
-                .sorted(String::compareTo)
-                .collect(Collectors.toList());
+        return getStudentNamesStartingWith('A');
+    }
+
+    @Transactional(readOnly = true)
+    public List<String> getStudentNamesStartingWith(char letter) {
+        logger.debug("Getting student names starting with letter method invoked");
+        String prefix = String.valueOf(letter).toLowerCase(Locale.ROOT);
+        return aggregateCache.get(STUDENTS, "names:" + prefix,
+                () -> List.copyOf(studentRepository.findUpperCaseNamesStartingWith(NameMatch.PREFIX.likePattern(prefix))));
     }
 
+    @Transactional(readOnly = true)
     public double getAverageAge() {
-        OptionalDouble averageAge = studentRepository.findAll()
-                .stream()
-                .mapToInt(Student::getAge)
-                .average();
-        if (averageAge.isPresent()) {
-            return averageAge.getAsDouble();
-        } else {
+        logger.debug("Getting average age method invoked");
+        Double averageAge = aggregateCache.get(STUDENTS, "avgAgeExact", studentRepository::getAverageAge);
+        if (averageAge == null) {
             throw new NoStudentsException();
         }
+        return averageAge;
+    }
+
+    /**
+     * The change-feed position published so far. It is read from the database, so
+     * every instance tags the same data alike; aggregates cached before it are dropped.
+     */
+    public long getDataVersion() {
+        long position = outboxService.getLastPosition();
+        aggregateCache.observe(STUDENTS, position);
+        return position;
     }
 }
@@ -0,0 +1,72 @@
+package ru.hogwarts.school.service;
+
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scales an image down to several widths from a single decode of the original.
+ * Large reductions are done in halving steps with bicubic interpolation, which
+ * keeps edges sharp without the aliasing of a single nearest-neighbour pass.
+ */
+@Component
+public class ThumbnailGenerator {
+
+    public Map<Integer, byte[]> generate(Path original, String format, int... widths) throws IOException {
+        BufferedImage image;
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(original), 8192)) {
+            image = ImageIO.read(is);
+        }
+        if (image == null) {
+            throw new IOException("Unsupported image format: " + original.getFileName());
+        }
+        Map<Integer, byte[]> thumbnails = new LinkedHashMap<>();
+        for (int width : widths) {
+            thumbnails.put(width, write(scale(image, width, format), format));
+        }
+        return thumbnails;
+    }
+
+    BufferedImage scale(BufferedImage image, int targetWidth, String format) {
+        int imageType = hasAlpha(image, format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int width = Math.min(targetWidth, image.getWidth());
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(width, currentWidth / 2);
+            currentHeight = Math.max(height, currentHeight / 2);
+            BufferedImage step = new BufferedImage(currentWidth, currentHeight, imageType);
+            Graphics2D graphics2D = step.createGraphics();
+            graphics2D.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics2D.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            graphics2D.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics2D.dispose();
+            current = step;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static boolean hasAlpha(BufferedImage image, String format) {
+        return image.getColorModel().hasAlpha() && !format.equalsIgnoreCase("jpg") && !format.equalsIgnoreCase("jpeg");
+    }
+
+    private static byte[] write(BufferedImage image, String format) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            if (!ImageIO.write(image, format, baos)) {
+                throw new IOException("No image writer for format " + format);
+            }
+            return baos.toByteArray();
+        }
+    }
+}
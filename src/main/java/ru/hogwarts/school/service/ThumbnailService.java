@@ -0,0 +1,235 @@
+package ru.hogwarts.school.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.storage.ContentStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates avatar thumbnails off the request thread. Jobs go to a bounded pool;
+ * the {@code thumbnails_pending} flag in the database is the source of truth, so
+ * jobs that were queued when the application stopped, rejected because the
+ * queue was full, or that failed are picked up again by
+ * {@link #recoverPendingThumbnails()}. An avatar that failed {@code max-attempts}
+ * times stays pending but is no longer retried until it is uploaded again.
+ */
+@Service
+public class ThumbnailService {
+    private final AvatarRepository avatarRepository;
+    private final ThumbnailGenerator thumbnailGenerator;
+    private final ContentStore contentStore;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor executor;
+    private final ConcurrentMap<Long, Boolean> scheduledAvatarIds = new ConcurrentHashMap<>();
+    private final int[] widths;
+    private final int maxAttempts;
+    private final Timer waitTimer;
+    private final Timer processingTimer;
+    private final DistributionSummary thumbnailSize;
+    private final Counter failures;
+
+    private static final int RECOVERY_BATCH_SIZE = 1000;
+
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailService.class);
+
+    public ThumbnailService(AvatarRepository avatarRepository,
+                            ThumbnailGenerator thumbnailGenerator,
+                            ContentStore contentStore,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${avatar.thumbnails.widths}") int[] widths,
+                            @Value("${avatar.thumbnails.threads}") int threads,
+                            @Value("${avatar.thumbnails.queue-capacity}") int queueCapacity,
+                            @Value("${avatar.thumbnails.max-attempts}") int maxAttempts) {
+        this.avatarRepository = avatarRepository;
+        this.thumbnailGenerator = thumbnailGenerator;
+        this.contentStore = contentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.widths = Arrays.stream(widths).sorted().distinct().toArray();
+        this.maxAttempts = maxAttempts;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("thumbnails-"));
+        this.waitTimer = Timer.builder("avatar.thumbnails.wait")
+                .description("Time a thumbnail job spends in the queue")
+                .register(meterRegistry);
+        this.processingTimer = Timer.builder("avatar.thumbnails.processing")
+                .description("Time spent decoding, scaling and storing thumbnails of one avatar")
+                .register(meterRegistry);
+        this.thumbnailSize = DistributionSummary.builder("avatar.thumbnails.size")
+                .description("Size of generated thumbnails")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.failures = Counter.builder("avatar.thumbnails.failures")
+                .description("Thumbnail jobs that failed and were left pending")
+                .register(meterRegistry);
+        meterRegistry.gauge("avatar.thumbnails.queue.size", executor, e -> e.getQueue().size());
+        meterRegistry.gauge("avatar.thumbnails.active", executor, ThreadPoolExecutor::getActiveCount);
+    }
+
+    /**
+     * Returns the configured width closest to, but not smaller than, the requested one.
+     */
+    public int resolveWidth(int requestedWidth) {
+        for (int width : widths) {
+            if (width >= requestedWidth) {
+                return width;
+            }
+        }
+        return widths[widths.length - 1];
+    }
+
+    public void scheduleAfterCommit(long avatarId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    schedule(avatarId);
+                }
+            });
+        } else {
+            schedule(avatarId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${avatar.thumbnails.recovery-delay}")
+    public void recoverPendingThumbnails() {
+        List<Long> pendingIds = avatarRepository.findIdsWithPendingThumbnails(maxAttempts, Limit.of(RECOVERY_BATCH_SIZE));
+        if (!pendingIds.isEmpty()) {
+            logger.info("Rescheduling thumbnails for {} avatars", pendingIds.size());
+            pendingIds.forEach(this::schedule);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues at most one job per avatar. A request for an avatar whose job is
+     * already queued or running is remembered and runs the job once more after
+     * it finishes, since the running job may have loaded the avatar before a
+     * re-upload and will then discard its result.
+     */
+    private void schedule(long avatarId) {
+        boolean alreadyScheduled = scheduledAvatarIds.merge(avatarId, Boolean.FALSE, (scheduled, again) -> Boolean.TRUE);
+        if (!alreadyScheduled) {
+            submit(avatarId);
+        }
+    }
+
+    private void submit(long avatarId) {
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                try {
+                    processingTimer.record(() -> generateThumbnails(avatarId));
+                } finally {
+                    if (!scheduledAvatarIds.remove(avatarId, Boolean.FALSE)) {
+                        scheduledAvatarIds.replace(avatarId, Boolean.TRUE, Boolean.FALSE);
+                        submit(avatarId);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduledAvatarIds.remove(avatarId);
+            logger.warn("Thumbnail queue is full, avatar {} will be retried later", avatarId);
+        }
+    }
+
+    private void generateThumbnails(long avatarId) {
+        Avatar source = transactionTemplate.execute(status -> avatarRepository.findById(avatarId)
+                .filter(avatar -> avatar.isThumbnailsPending() || avatar.getContentHash() == null)
+                .orElse(null));
+        if (source == null) {
+            return;
+        }
+        Path filePath = contentStore.locate(source.getContentKey(), source.getFilePath());
+        if (!source.isThumbnailsPending()) {
+            backfillContentHash(avatarId, filePath);
+            return;
+        }
+        String contentHash = source.getContentHash();
+        Map<Integer, String> thumbnails = new HashMap<>();
+        try {
+            if (contentHash == null) {
+                contentHash = contentStore.hash(filePath);
+            }
+            String format = getExtension(filePath.getFileName().toString());
+            for (Map.Entry<Integer, byte[]> thumbnail : thumbnailGenerator.generate(filePath, format, widths).entrySet()) {
+                thumbnailSize.record(thumbnail.getValue().length);
+                thumbnails.put(thumbnail.getKey(), contentStore.store(thumbnail.getValue(), format));
+            }
+        } catch (Exception e) {
+            // the preview endpoint falls back to the original image until a retry succeeds
+            failures.increment();
+            logger.error("Failed to generate thumbnails for avatar {} (attempt {} of {})",
+                    avatarId, source.getThumbnailAttempts() + 1, maxAttempts, e);
+            transactionTemplate.executeWithoutResult(status -> avatarRepository.findById(avatarId)
+                    .filter(avatar -> Objects.equals(avatar.getContentHash(), source.getContentHash()))
+                    .ifPresent(avatar -> avatar.setThumbnailAttempts(avatar.getThumbnailAttempts() + 1)));
+            return;
+        }
+        String computedHash = contentHash;
+        transactionTemplate.executeWithoutResult(status -> avatarRepository.findById(avatarId)
+                .filter(avatar -> Objects.equals(avatar.getContentHash(), source.getContentHash()))
+                .ifPresent(avatar -> {
+                    avatar.setContentHash(computedHash);
+                    avatar.getThumbnails().clear();
+                    avatar.getThumbnails().putAll(thumbnails);
+                    avatar.setThumbnailsPending(false);
+                }));
+    }
+
+    /**
+     * Avatars uploaded before content hashes were recorded get theirs here rather
+     * than on the download request that noticed it missing.
+     */
+    private void backfillContentHash(long avatarId, Path filePath) {
+        String contentHash;
+        try {
+            contentHash = contentStore.hash(filePath);
+        } catch (IOException e) {
+            logger.error("Failed to hash the original of avatar {}", avatarId, e);
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> avatarRepository.findById(avatarId)
+                .filter(avatar -> avatar.getContentHash() == null
+                        && contentStore.locate(avatar.getContentKey(), avatar.getFilePath()).equals(filePath))
+                .ifPresent(avatar -> avatar.setContentHash(contentHash)));
+    }
+
+    private static String getExtension(String fileName) {
+        return fileName.substring(fileName.lastIndexOf(".") + 1);
+    }
+}
@@ -0,0 +1,207 @@
+package ru.hogwarts.school.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+
+/**
+ * Content-addressed file store. Every blob is saved once under the SHA-256 of its
+ * bytes, sharded into two directory levels ({@code ab/cd/abcd...ef.png}), and is
+ * never modified afterwards, so the hash doubles as a strong ETag.
+ */
+@Component
+public class ContentStore {
+    private final Path root;
+    private final Path tempDir;
+    private final Object[] locks = new Object[64];
+
+    public ContentStore(@Value("${path.to.avatars.folder}") String avatarsDir) {
+        this.root = Path.of(avatarsDir, "content");
+        this.tempDir = Path.of(avatarsDir, "tmp");
+        Arrays.setAll(locks, i -> new Object());
+    }
+
+    public String store(byte[] content, String extension) throws IOException {
+        String key = keyOf(HexFormat.of().formatHex(newDigest().digest(content)), extension);
+        Path target = resolve(key);
+        if (reuse(target)) {
+            return key;
+        }
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "blob", ".tmp");
+        try {
+            Files.write(tempFile, content);
+            moveIntoPlace(tempFile, target);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        return key;
+    }
+
+    /**
+     * Copies the stream to a temporary file while hashing it, so the content is
+     * read exactly once, then moves it under its hash unless that blob already exists.
+     */
+    public String store(InputStream content, String extension) throws IOException {
+        Files.createDirectories(tempDir);
+        Path tempFile = Files.createTempFile(tempDir, "blob", ".tmp");
+        try {
+            MessageDigest digest = newDigest();
+            try (InputStream is = new DigestInputStream(content, digest);
+                 OutputStream os = Files.newOutputStream(tempFile)) {
+                is.transferTo(os);
+            }
+            String key = keyOf(HexFormat.of().formatHex(digest.digest()), extension);
+            Path target = resolve(key);
+            if (!reuse(target)) {
+                moveIntoPlace(tempFile, target);
+            }
+            return key;
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Refreshes a blob that a new reference is about to point to, such as a thumbnail
+     * copied from another avatar with the same content. Returns false if it is gone.
+     */
+    public boolean reuse(String key) throws IOException {
+        return reuse(resolve(key));
+    }
+
+    public Path resolve(String key) {
+        return root.resolve(key);
+    }
+
+    /**
+     * Resolves a blob by key against the current root, so stored keys survive a move
+     * of the avatars folder. Files written before the content store have no key and
+     * are found by the path recorded with them.
+     */
+    public Path locate(String key, String legacyPath) {
+        return key != null ? resolve(key) : Path.of(legacyPath);
+    }
+
+    public String hashOf(String key) {
+        String fileName = Path.of(key).getFileName().toString();
+        int dot = fileName.indexOf('.');
+        return dot < 0 ? fileName : fileName.substring(0, dot);
+    }
+
+    public String hash(Path file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream is = new DigestInputStream(Files.newInputStream(file), digest)) {
+            is.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Lists keys of blobs last written or reused before the given instant.
+     * The caller must close the returned stream.
+     */
+    public Stream<String> keysOlderThan(Instant instant) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return Stream.empty();
+        }
+        return Files.walk(root)
+                .filter(Files::isRegularFile)
+                .filter(path -> lastModified(path).isBefore(instant))
+                .map(path -> root.relativize(path).toString().replace('\\', '/'));
+    }
+
+    public void deleteTempFilesOlderThan(Instant instant) throws IOException {
+        if (!Files.isDirectory(tempDir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            for (Path file : (Iterable<Path>) files.filter(path -> lastModified(path).isBefore(instant))::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Deletes a blob unless it was written or reused at or after the given instant.
+     * The check and the delete hold the same lock as {@link #reuse(Path)}, so an
+     * upload deduplicated against the blob either refreshes it first or finds it gone
+     * and writes it again.
+     */
+    public boolean deleteIfNotModifiedSince(String key, Instant instant) throws IOException {
+        Path path = resolve(key);
+        synchronized (lockFor(path)) {
+            if (!lastModified(path).isBefore(instant)) {
+                return false;
+            }
+            return Files.deleteIfExists(path);
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Refreshes the modification time of an existing blob so the garbage collector's
+     * grace period also protects uploads that were deduplicated against it.
+     */
+    private boolean reuse(Path target) throws IOException {
+        synchronized (lockFor(target)) {
+            if (!Files.exists(target)) {
+                return false;
+            }
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return true;
+        }
+    }
+
+    private Object lockFor(Path path) {
+        return locks[Math.floorMod(path.getFileName().hashCode(), locks.length)];
+    }
+
+    private static void moveIntoPlace(Path tempFile, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(tempFile, target, ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e) {
+            // stored concurrently by another upload of the same bytes
+        }
+    }
+
+    private static Instant lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toInstant();
+        } catch (NoSuchFileException e) {
+            return Instant.MAX;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String keyOf(String hash, String extension) {
+        return hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + "." + extension;
+    }
+}
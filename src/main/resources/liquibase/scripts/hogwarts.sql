@@ -2,4 +2,245 @@
 -- changeset mpanova:1
 CREATE INDEX student_name_index ON student (name);
 -- changeset mpanova:2
-CREATE INDEX faculty_name_colour_index ON faculty (name, colour);
\ No newline at end of file
+CREATE INDEX faculty_name_colour_index ON faculty (name, colour);
+-- changeset mpanova:3
+ALTER TABLE avatar ADD COLUMN preview_path VARCHAR(255);
+-- changeset mpanova:4
+ALTER TABLE avatar ADD COLUMN content_hash VARCHAR(64);
+-- changeset mpanova:5
+CREATE TABLE avatar_thumbnail (
+    avatar_id BIGINT NOT NULL REFERENCES avatar (id) ON DELETE CASCADE,
+    width INTEGER NOT NULL,
+    path VARCHAR(255) NOT NULL,
+    PRIMARY KEY (avatar_id, width)
+);
+INSERT INTO avatar_thumbnail (avatar_id, width, path) SELECT id, 100, preview_path FROM avatar WHERE preview_path IS NOT NULL;
+ALTER TABLE avatar DROP COLUMN preview_path;
+ALTER TABLE avatar ADD COLUMN thumbnails_pending BOOLEAN NOT NULL DEFAULT FALSE;
+UPDATE avatar SET thumbnails_pending = TRUE;
+CREATE INDEX avatar_thumbnails_pending_index ON avatar (id) WHERE thumbnails_pending;
+-- changeset mpanova:6
+CREATE INDEX avatar_content_hash_index ON avatar (content_hash);
+CREATE INDEX avatar_file_path_index ON avatar (file_path);
+CREATE INDEX avatar_thumbnail_path_index ON avatar_thumbnail (path);
+-- changeset mpanova:7
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX student_name_lower_index ON student (lower(name) text_pattern_ops);
+CREATE INDEX student_name_trgm_index ON student USING gin (lower(name) gin_trgm_ops);
+CREATE INDEX faculty_name_lower_index ON faculty (lower(name) text_pattern_ops);
+CREATE INDEX faculty_colour_lower_index ON faculty (lower(colour));
+CREATE INDEX faculty_name_trgm_index ON faculty USING gin (lower(name) gin_trgm_ops);
+-- changeset mpanova:8
+CREATE INDEX student_faculty_age_index ON student (faculty_id, age);
+CREATE INDEX student_faculty_name_lower_index ON student (faculty_id, lower(name) text_pattern_ops);
+CREATE INDEX student_age_index ON student (age);
+-- changeset mpanova:9
+ALTER TABLE student ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+ALTER TABLE faculty ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+-- changeset mpanova:10
+ALTER TABLE student ADD COLUMN deleted_at TIMESTAMP WITH TIME ZONE;
+ALTER TABLE student DROP CONSTRAINT IF EXISTS unique_name;
+CREATE UNIQUE INDEX student_name_unique_index ON student (name) WHERE deleted_at IS NULL;
+CREATE INDEX student_deleted_at_index ON student (deleted_at) WHERE deleted_at IS NOT NULL;
+-- changeset mpanova:11
+CREATE SEQUENCE outbox_event_seq START WITH 1 INCREMENT BY 50;
+CREATE TABLE outbox_event (
+    id BIGINT PRIMARY KEY,
+    entity VARCHAR(32) NOT NULL,
+    entity_id BIGINT NOT NULL,
+    change_type VARCHAR(16) NOT NULL,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL,
+    feed_position BIGINT UNIQUE
+);
+CREATE INDEX outbox_event_pending_index ON outbox_event (id) WHERE feed_position IS NULL;
+CREATE TABLE outbox_relay (
+    id INTEGER PRIMARY KEY,
+    last_position BIGINT NOT NULL
+);
+INSERT INTO outbox_relay (id, last_position) VALUES (1, 0);
+-- changeset mpanova:12
+CREATE TABLE faculty_age_stats (
+    faculty_id BIGINT NOT NULL REFERENCES faculty (id) ON DELETE CASCADE,
+    age INTEGER NOT NULL,
+    student_count BIGINT NOT NULL,
+    avatar_count BIGINT NOT NULL,
+    PRIMARY KEY (faculty_id, age)
+);
+INSERT INTO faculty_age_stats (faculty_id, age, student_count, avatar_count)
+SELECT s.faculty_id, s.age, COUNT(*), COUNT(a.id)
+FROM student s LEFT JOIN avatar a ON a.student_id = s.id
+WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+GROUP BY s.faculty_id, s.age;
+-- changeset mpanova:13 splitStatements:false
+CREATE FUNCTION faculty_age_stats_add_students() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT n.faculty_id, n.age, COUNT(*), 0
+        FROM new_rows n
+        WHERE n.faculty_id IS NOT NULL AND n.deleted_at IS NULL
+        GROUP BY n.faculty_id, n.age
+        ORDER BY n.faculty_id, n.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET student_count = fs.student_count + EXCLUDED.student_count;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT o.faculty_id, o.age, -COUNT(*), -COUNT(a.id)
+        FROM old_rows o LEFT JOIN avatar a ON a.student_id = o.id
+        WHERE o.faculty_id IS NOT NULL AND o.deleted_at IS NULL
+        GROUP BY o.faculty_id, o.age
+        ORDER BY o.faculty_id, o.age
+        ON CONFLICT (faculty_id, age) DO UPDATE
+            SET student_count = fs.student_count + EXCLUDED.student_count,
+                avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    ELSE
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT bucket.faculty_id, bucket.age, SUM(bucket.students), SUM(bucket.avatars)
+        FROM (
+            SELECT o.faculty_id, o.age, -1 AS students, CASE WHEN a.id IS NULL THEN 0 ELSE -1 END AS avatars
+            FROM old_rows o JOIN new_rows n ON n.id = o.id LEFT JOIN avatar a ON a.student_id = o.id
+            WHERE o.faculty_id IS NOT NULL AND o.deleted_at IS NULL
+              AND (n.faculty_id, n.age, n.deleted_at) IS DISTINCT FROM (o.faculty_id, o.age, o.deleted_at)
+            UNION ALL
+            SELECT n.faculty_id, n.age, 1, CASE WHEN a.id IS NULL THEN 0 ELSE 1 END
+            FROM new_rows n JOIN old_rows o ON o.id = n.id LEFT JOIN avatar a ON a.student_id = n.id
+            WHERE n.faculty_id IS NOT NULL AND n.deleted_at IS NULL
+              AND (n.faculty_id, n.age, n.deleted_at) IS DISTINCT FROM (o.faculty_id, o.age, o.deleted_at)
+        ) bucket
+        GROUP BY bucket.faculty_id, bucket.age
+        ORDER BY bucket.faculty_id, bucket.age
+        ON CONFLICT (faculty_id, age) DO UPDATE
+            SET student_count = fs.student_count + EXCLUDED.student_count,
+                avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    END IF;
+    RETURN NULL;
+END
+$$;
+CREATE TRIGGER student_stats_insert AFTER INSERT ON student
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_students();
+CREATE TRIGGER student_stats_update AFTER UPDATE ON student
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_students();
+CREATE TRIGGER student_stats_delete AFTER DELETE ON student
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_students();
+CREATE FUNCTION faculty_age_stats_add_avatars() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, COUNT(*)
+        FROM new_rows n JOIN student s ON s.id = n.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, -COUNT(*)
+        FROM old_rows o JOIN student s ON s.id = o.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    ELSE
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, SUM(moved.avatars)
+        FROM (
+            SELECT o.student_id, -1 AS avatars
+            FROM old_rows o JOIN new_rows n ON n.id = o.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id
+            UNION ALL
+            SELECT n.student_id, 1
+            FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id
+        ) moved JOIN student s ON s.id = moved.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    END IF;
+    RETURN NULL;
+END
+$$;
+CREATE TRIGGER avatar_stats_insert AFTER INSERT ON avatar
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_avatars();
+CREATE TRIGGER avatar_stats_update AFTER UPDATE ON avatar
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_avatars();
+CREATE TRIGGER avatar_stats_delete AFTER DELETE ON avatar
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION faculty_age_stats_add_avatars();
+-- changeset mpanova:14
+-- preconditions onFail:CONTINUE
+-- precondition-sql-check expectedResult:0 SELECT COUNT(*) FROM avatar a WHERE a.data IS NOT NULL AND (a.file_path IS NULL OR a.content_hash IS NULL OR a.thumbnails_pending OR NOT EXISTS (SELECT 1 FROM avatar_thumbnail t WHERE t.avatar_id = a.id))
+ALTER TABLE avatar DROP COLUMN data;
+-- rollback ALTER TABLE avatar ADD COLUMN data BYTEA;
+-- changeset mpanova:15
+ALTER TABLE avatar ADD COLUMN thumbnail_attempts INTEGER NOT NULL DEFAULT 0;
+-- changeset mpanova:16
+ALTER TABLE avatar ADD COLUMN content_key VARCHAR(255);
+UPDATE avatar SET content_key = substring(file_path FROM '/content/([0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\.[^/]+)$')
+WHERE file_path ~ '/content/[0-9a-f]{2}/[0-9a-f]{2}/[0-9a-f]{64}\.[^/]+$';
+CREATE INDEX avatar_content_key_index ON avatar (content_key);
+DROP INDEX avatar_file_path_index;
+-- rollback CREATE INDEX avatar_file_path_index ON avatar (file_path);
+-- rollback DROP INDEX avatar_content_key_index;
+-- rollback ALTER TABLE avatar DROP COLUMN content_key;
+-- changeset mpanova:17 splitStatements:false
+CREATE OR REPLACE FUNCTION faculty_age_stats_add_avatars() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    -- The foreign key check only takes FOR KEY SHARE on the student, which does not
+    -- conflict with a concurrent UPDATE of its age, faculty or deletion mark. Locking
+    -- the students makes the two writes wait for each other: whichever trigger runs
+    -- second then reads the other's committed row instead of a stale one.
+    IF TG_OP = 'INSERT' THEN
+        PERFORM 1 FROM student WHERE id IN (SELECT student_id FROM new_rows) ORDER BY id FOR UPDATE;
+    ELSIF TG_OP = 'DELETE' THEN
+        PERFORM 1 FROM student WHERE id IN (SELECT student_id FROM old_rows) ORDER BY id FOR UPDATE;
+    ELSE
+        PERFORM 1 FROM student
+        WHERE id IN (
+            SELECT o.student_id FROM old_rows o JOIN new_rows n ON n.id = o.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id
+            UNION
+            SELECT n.student_id FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id)
+        ORDER BY id FOR UPDATE;
+    END IF;
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, COUNT(*)
+        FROM new_rows n JOIN student s ON s.id = n.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    ELSIF TG_OP = 'DELETE' THEN
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, -COUNT(*)
+        FROM old_rows o JOIN student s ON s.id = o.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    ELSE
+        INSERT INTO faculty_age_stats AS fs (faculty_id, age, student_count, avatar_count)
+        SELECT s.faculty_id, s.age, 0, SUM(moved.avatars)
+        FROM (
+            SELECT o.student_id, -1 AS avatars
+            FROM old_rows o JOIN new_rows n ON n.id = o.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id
+            UNION ALL
+            SELECT n.student_id, 1
+            FROM new_rows n JOIN old_rows o ON o.id = n.id
+            WHERE n.student_id IS DISTINCT FROM o.student_id
+        ) moved JOIN student s ON s.id = moved.student_id
+        WHERE s.faculty_id IS NOT NULL AND s.deleted_at IS NULL
+        GROUP BY s.faculty_id, s.age
+        ORDER BY s.faculty_id, s.age
+        ON CONFLICT (faculty_id, age) DO UPDATE SET avatar_count = fs.avatar_count + EXCLUDED.avatar_count;
+    END IF;
+    RETURN NULL;
+END
+$$;
@@ -0,0 +1,118 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.hogwarts.school.service.AggregateCache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.hogwarts.school.service.AggregateCache.Region.FACULTIES;
+import static ru.hogwarts.school.service.AggregateCache.Region.STUDENTS;
+
+public class AggregateCacheTests {
+
+    private final AggregateCache aggregateCache = new AggregateCache(Duration.ofHours(1), Duration.ZERO);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    public void testValuesAreCachedUntilTheirRegionIsInvalidated() {
+        assertThat(load()).isEqualTo(1);
+        assertThat(load()).isEqualTo(1);
+        long version = aggregateCache.getVersion(STUDENTS);
+
+        aggregateCache.invalidate(FACULTIES);
+        assertThat(load()).isEqualTo(1);
+
+        aggregateCache.invalidate(STUDENTS);
+        assertThat(aggregateCache.getVersion(STUDENTS)).isGreaterThan(version);
+        assertThat(load()).isEqualTo(2);
+        assertThat(load()).isEqualTo(2);
+    }
+
+    @Test
+    public void testValuesLoadedBeforeCommitAreDroppedAfterCompletion() {
+        TransactionSynchronizationManager.initSynchronization();
+        aggregateCache.invalidate(STUDENTS);
+        long versionInTransaction = aggregateCache.getVersion(STUDENTS);
+        // a concurrent reader still sees the uncommitted state and caches it
+        assertThat(load()).isEqualTo(1);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+
+        assertThat(aggregateCache.getVersion(STUDENTS)).isGreaterThan(versionInTransaction);
+        assertThat(load()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNewerFeedPositionDropsCachedValues() {
+        aggregateCache.observe(STUDENTS, 5);
+        assertThat(load()).isEqualTo(1);
+
+        aggregateCache.observe(STUDENTS, 5);
+        aggregateCache.observe(STUDENTS, 4);
+        assertThat(load()).isEqualTo(1);
+
+        aggregateCache.observe(STUDENTS, 6);
+        assertThat(load()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNullValuesAreNotCached() {
+        assertThat(aggregateCache.<Integer>get(STUDENTS, "empty", () -> {
+            loads.incrementAndGet();
+            return null;
+        })).isNull();
+        aggregateCache.get(STUDENTS, "empty", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    public void testValuesExpireAfterTtl() throws InterruptedException {
+        AggregateCache shortLived = new AggregateCache(Duration.ofMillis(50), Duration.ZERO);
+        assertThat(load(shortLived)).isEqualTo(1);
+        assertThat(load(shortLived)).isEqualTo(1);
+
+        Thread.sleep(60);
+        assertThat(load(shortLived)).isEqualTo(2);
+    }
+
+    @Test
+    public void testValuesLoadedWithinReplicaLagOfAWriteAreNotCached() throws InterruptedException {
+        AggregateCache withReplicas = new AggregateCache(Duration.ofHours(1), Duration.ofMillis(100));
+        assertThat(load(withReplicas)).isEqualTo(1);
+        assertThat(load(withReplicas)).isEqualTo(1);
+
+        withReplicas.invalidate(STUDENTS);
+        // a replica may not have applied the write yet
+        assertThat(load(withReplicas)).isEqualTo(2);
+        assertThat(load(withReplicas)).isEqualTo(3);
+
+        Thread.sleep(120);
+        assertThat(load(withReplicas)).isEqualTo(4);
+        assertThat(load(withReplicas)).isEqualTo(4);
+    }
+
+    private int load() {
+        return load(aggregateCache);
+    }
+
+    private int load(AggregateCache cache) {
+        return cache.get(STUDENTS, "count", loads::incrementAndGet);
+    }
+}
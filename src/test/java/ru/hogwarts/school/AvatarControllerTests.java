@@ -0,0 +1,131 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.hogwarts.school.controller.AvatarController;
+import ru.hogwarts.school.exceptions.NoSuchAvatarException;
+import ru.hogwarts.school.model.AvatarFile;
+import ru.hogwarts.school.service.AvatarService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(AvatarController.class)
+public class AvatarControllerTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private AvatarService avatarService;
+
+    @TempDir
+    Path tempDir;
+
+    final long id = 1L;
+    final byte[] previewBytes = {1, 2, 3, 4, 5};
+    final String hash = "abcdef";
+    AvatarFile preview;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Path previewPath = Files.write(tempDir.resolve(hash + ".png"), previewBytes);
+        preview = new AvatarFile(previewPath, MediaType.IMAGE_PNG_VALUE, hash);
+    }
+
+    @Test
+    public void testDownloadAvatarPreview() throws Exception {
+        when(avatarService.findAvatarPreview(id, 100)).thenReturn(preview);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar/preview", id))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + hash + "\""))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, previewBytes.length))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, containsString("public")))
+                .andExpect(content().bytes(previewBytes));
+    }
+
+    @Test
+    public void testProvisionalAvatarPreviewIsNotStored() throws Exception {
+        when(avatarService.findAvatarPreview(id, 100))
+                .thenReturn(new AvatarFile(preview.path(), MediaType.IMAGE_PNG_VALUE, hash, true));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar/preview", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-store"))
+                .andExpect(content().bytes(previewBytes));
+    }
+
+    @Test
+    public void testDownloadAvatarPreviewNotModified() throws Exception {
+        when(avatarService.findAvatarPreview(id, 100)).thenReturn(preview);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar/preview", id)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + hash + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    public void testDownloadMissingAvatarPreview() throws Exception {
+        when(avatarService.findAvatarPreview(id, 100)).thenThrow(new NoSuchAvatarException(id));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar/preview", id))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testDownloadAvatarRange() throws Exception {
+        when(avatarService.findAvatarFile(id)).thenReturn(preview);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar", id)
+                        .header(HttpHeaders.RANGE, "bytes=1-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-3/" + previewBytes.length))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + hash + "\""))
+                .andExpect(content().bytes(new byte[]{2, 3, 4}));
+    }
+
+    @Test
+    public void testDownloadAvatarIsRevalidated() throws Exception {
+        when(avatarService.findAvatarFile(id)).thenReturn(preview);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, public"));
+    }
+
+    @Test
+    public void testDownloadAvatarNotModified() throws Exception {
+        when(avatarService.findAvatarFile(id)).thenReturn(preview);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar", id)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + hash + "\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    public void testDownloadAvatarWithoutContentHash() throws Exception {
+        when(avatarService.findAvatarFile(id)).thenReturn(new AvatarFile(preview.path(), MediaType.IMAGE_PNG_VALUE, null));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/avatar/{id}/avatar", id))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().bytes(previewBytes));
+    }
+}
@@ -0,0 +1,165 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.storage.ContentStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AvatarStorageCollectorTests {
+
+    private static final Duration GRACE_PERIOD = Duration.ofHours(1);
+
+    @TempDir
+    Path tempDir;
+
+    private final AvatarRepository avatarRepository = mock(AvatarRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final Set<String> avatarKeys = new HashSet<>();
+    private final Set<String> thumbnailKeys = new HashSet<>();
+    private ContentStore contentStore;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(avatarRepository.findReferencedContentKeys(anyCollection()))
+                .thenAnswer(invocation -> referenced(invocation.getArgument(0), avatarKeys));
+        when(avatarRepository.findReferencedThumbnailPaths(anyCollection()))
+                .thenAnswer(invocation -> referenced(invocation.getArgument(0), thumbnailKeys));
+        contentStore = new ContentStore(tempDir.resolve("avatars").toString());
+    }
+
+    @Test
+    public void testStoreDeduplicatesAndRefreshesReusedBlob() throws IOException {
+        String key = contentStore.store(new byte[]{1, 2, 3}, "png");
+        makeOld(key);
+
+        String sameKey = contentStore.store(new ByteArrayInputStream(new byte[]{1, 2, 3}), "png");
+
+        assertThat(sameKey).isEqualTo(key);
+        assertThat(contentStore.hashOf(key)).isEqualTo(contentStore.hash(contentStore.resolve(key)));
+        assertThat(Files.getLastModifiedTime(contentStore.resolve(key)).toInstant())
+                .isAfter(Instant.now().minus(GRACE_PERIOD));
+        try (var keys = contentStore.keysOlderThan(Instant.now().plusSeconds(1))) {
+            assertThat(keys).containsExactly(key);
+        }
+    }
+
+    @Test
+    public void testKeepsReferencedBlobsAndDeletesOrphans() throws IOException {
+        String original = makeOld(contentStore.store(new byte[]{1}, "png"));
+        String thumbnail = makeOld(contentStore.store(new byte[]{2}, "png"));
+        String orphan = makeOld(contentStore.store(new byte[]{3}, "png"));
+        avatarKeys.add(original);
+        thumbnailKeys.add(thumbnail);
+
+        collector(contentStore).collectGarbage();
+
+        assertThat(contentStore.resolve(original)).exists();
+        assertThat(contentStore.resolve(thumbnail)).exists();
+        assertThat(contentStore.resolve(orphan)).doesNotExist();
+    }
+
+    @Test
+    public void testKeepsOrphansWithinGracePeriod() throws IOException {
+        String fresh = contentStore.store(new byte[]{1}, "png");
+
+        collector(contentStore).collectGarbage();
+
+        assertThat(contentStore.resolve(fresh)).exists();
+    }
+
+    @Test
+    public void testKeepsBlobReusedWhileItsBatchIsChecked() throws IOException {
+        String key = makeOld(contentStore.store(new byte[]{1}, "png"));
+        when(avatarRepository.findReferencedContentKeys(anyCollection())).thenAnswer(invocation -> {
+            // an upload deduplicates against the blob but has not committed its avatar yet
+            contentStore.store(new byte[]{1}, "png");
+            return List.of();
+        });
+
+        collector(contentStore).collectGarbage();
+
+        assertThat(contentStore.resolve(key)).exists();
+    }
+
+    @Test
+    public void testKeepsThumbnailReusedWhileItsBatchIsChecked() throws IOException {
+        String thumbnail = makeOld(contentStore.store(new byte[]{1}, "png"));
+        when(avatarRepository.findReferencedThumbnailPaths(anyCollection())).thenAnswer(invocation -> {
+            // an upload copies the thumbnails of an avatar with the same content
+            assertThat(contentStore.reuse(thumbnail)).isTrue();
+            return List.of();
+        });
+
+        collector(contentStore).collectGarbage();
+
+        assertThat(contentStore.resolve(thumbnail)).exists();
+        assertThat(contentStore.reuse("ab/cd/missing.png")).isFalse();
+    }
+
+    @Test
+    public void testLooksUpReferencesInReadWriteTransaction() throws IOException {
+        makeOld(contentStore.store(new byte[]{1}, "png"));
+
+        collector(contentStore).collectGarbage();
+
+        var order = inOrder(transactionManager, avatarRepository);
+        order.verify(transactionManager).getTransaction(argThat((TransactionDefinition definition) -> !definition.isReadOnly()));
+        order.verify(avatarRepository).findReferencedThumbnailPaths(anyCollection());
+        order.verify(avatarRepository).findReferencedContentKeys(anyCollection());
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    public void testKeepsReferencedBlobsAfterAvatarsFolderMoved() throws IOException {
+        String key = makeOld(contentStore.store(new byte[]{1}, "png"));
+        String orphan = makeOld(contentStore.store(new byte[]{2}, "png"));
+        avatarKeys.add(key);
+        Path movedFolder = Files.move(tempDir.resolve("avatars"), tempDir.resolve("moved"));
+        // a relative folder as configured in application.properties
+        ContentStore movedStore = new ContentStore(Path.of("").toAbsolutePath().relativize(movedFolder).toString());
+
+        collector(movedStore).collectGarbage();
+
+        assertThat(movedStore.resolve(key)).exists();
+        assertThat(movedStore.resolve(orphan)).doesNotExist();
+    }
+
+    private AvatarStorageCollector collector(ContentStore store) {
+        return new AvatarStorageCollector(avatarRepository, store, transactionManager, GRACE_PERIOD);
+    }
+
+    private String makeOld(String key) throws IOException {
+        Files.setLastModifiedTime(contentStore.resolve(key), FileTime.from(Instant.now().minus(GRACE_PERIOD.multipliedBy(2))));
+        return key;
+    }
+
+    private static List<String> referenced(Collection<String> keys, Set<String> references) {
+        return keys.stream().filter(references::contains).toList();
+    }
+}
@@ -0,0 +1,151 @@
+package ru.hogwarts.school;
+
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.EntityKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Transactional;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.OutboxRelay;
+import ru.hogwarts.school.service.StudentService;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the batch endpoints' service methods with more items than one flush chunk
+ * and checks that the persistence context is cleared between chunks.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:batch",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "path.to.avatars.folder=target/avatars"
+})
+@Transactional
+public class BatchWriteTests {
+
+    private static final int FLUSH_SIZE = 500;
+    private static final int BATCH_SIZE = 2 * FLUSH_SIZE + 1;
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private FacultyService facultyService;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    @MockitoBean
+    private OutboxRelay outboxRelay;
+
+    @Test
+    public void testCreateStudentsClearsPersistenceContextEveryChunk() {
+        List<BatchItemResult> results = studentService.createStudents(IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> new Student("Student " + i, 16))
+                .toList());
+
+        assertThat(results).hasSize(BATCH_SIZE).allMatch(result -> result.status() == BatchItemResult.Status.CREATED);
+        assertThat(results).extracting(BatchItemResult::id).doesNotContainNull().doesNotHaveDuplicates();
+        assertThat(managed(Student.class)).isEqualTo(BATCH_SIZE % FLUSH_SIZE);
+        assertThat(count("Student")).isEqualTo(BATCH_SIZE);
+    }
+
+    @Test
+    public void testEditStudentsAcrossChunksKeepsFacultyAndReportsEveryItem() {
+        Faculty faculty = facultyService.createFaculty(new Faculty("Hufflepuff", "yellow"));
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Student student = new Student("Student " + i, 16);
+            student.setFaculty(faculty);
+            students.add(student);
+        }
+        studentService.createStudents(students);
+        entityManager.flush();
+        entityManager.clear();
+
+        List<Student> edits = new ArrayList<>();
+        for (Student student : students) {
+            Student edit = new Student(student.getName() + " edited", 17);
+            edit.setId(student.getId());
+            edits.add(edit);
+        }
+        edits.get(FLUSH_SIZE).setVersion(42L);
+        Student missing = new Student("Missing", 17);
+        missing.setId(-1L);
+        edits.add(missing);
+
+        List<BatchItemResult> results = studentService.editStudents(edits);
+
+        assertThat(managed(Student.class)).isZero();
+        assertThat(results).hasSize(BATCH_SIZE + 1);
+        assertThat(results).extracting(BatchItemResult::index).containsExactlyElementsOf(IntStream.rangeClosed(0, BATCH_SIZE).boxed().toList());
+        assertThat(results.get(FLUSH_SIZE).status()).isEqualTo(BatchItemResult.Status.CONFLICT);
+        assertThat(results.get(BATCH_SIZE).status()).isEqualTo(BatchItemResult.Status.NOT_FOUND);
+        assertThat(results).filteredOn(result -> result.status() == BatchItemResult.Status.UPDATED).hasSize(BATCH_SIZE - 1);
+        Student last = studentService.findStudent(students.get(BATCH_SIZE - 1).getId());
+        assertThat(last.getName()).isEqualTo("Student " + (BATCH_SIZE - 1) + " edited");
+        assertThat(last.getAge()).isEqualTo(17);
+        assertThat(last.getFaculty().getId()).isEqualTo(faculty.getId());
+        assertThat(studentService.findStudent(students.get(FLUSH_SIZE).getId()).getAge()).isEqualTo(16);
+    }
+
+    @Test
+    public void testFacultyBatchCreateEditAndRemove() {
+        List<BatchItemResult> created = facultyService.createFaculties(IntStream.range(0, BATCH_SIZE)
+                .mapToObj(i -> new Faculty("Faculty " + i, "colour " + i))
+                .toList());
+        assertThat(created).hasSize(BATCH_SIZE).allMatch(result -> result.status() == BatchItemResult.Status.CREATED);
+        assertThat(managed(Faculty.class)).isEqualTo(BATCH_SIZE % FLUSH_SIZE);
+
+        List<Faculty> edits = created.stream()
+                .map(result -> {
+                    Faculty edit = new Faculty("Renamed " + result.index(), "grey " + result.index());
+                    edit.setId(result.id());
+                    return edit;
+                })
+                .toList();
+        List<BatchItemResult> edited = facultyService.editFaculties(edits);
+        assertThat(edited).allMatch(result -> result.status() == BatchItemResult.Status.UPDATED);
+        assertThat(managed(Faculty.class)).isZero();
+        assertThat(facultyService.findFaculty(created.get(BATCH_SIZE - 1).id()).getColour()).isEqualTo("grey " + (BATCH_SIZE - 1));
+
+        List<Long> ids = new ArrayList<>(created.stream().map(BatchItemResult::id).toList());
+        ids.add(-1L);
+        List<BatchItemResult> removed = facultyService.removeFaculties(ids);
+        assertThat(removed).filteredOn(result -> result.status() == BatchItemResult.Status.DELETED).hasSize(BATCH_SIZE);
+        assertThat(removed.get(BATCH_SIZE).status()).isEqualTo(BatchItemResult.Status.NOT_FOUND);
+        assertThat(count("Faculty")).isZero();
+    }
+
+    private long managed(Class<?> entityClass) {
+        return entityManager.unwrap(Session.class).getStatistics().getEntityKeys().stream()
+                .map(EntityKey.class::cast)
+                .filter(key -> key.getEntityName().equals(entityClass.getName()))
+                .count();
+    }
+
+    private long count(String entity) {
+        return entityManager.createQuery("SELECT COUNT(e) FROM " + entity + " e", Long.class).getSingleResult();
+    }
+}
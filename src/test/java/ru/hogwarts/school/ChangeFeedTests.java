@@ -0,0 +1,207 @@
+package ru.hogwarts.school;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import ru.hogwarts.school.dto.ChangeEvent;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.model.ChangeType;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.ChangeFeed;
+import ru.hogwarts.school.service.OutboxRelay;
+import ru.hogwarts.school.service.OutboxService;
+import ru.hogwarts.school.service.StudentService;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:changes",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "path.to.avatars.folder=target/avatars",
+        "changes.relay.delay=100ms",
+        "changes.poll-delay=100ms"
+})
+public class ChangeFeedTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private OutboxService outboxService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM student");
+    }
+
+    @Test
+    public void testChangesAreStreamedAndResumable() throws Exception {
+        long start = outboxService.getLastPosition();
+        Student student = studentService.createStudent(new Student("Neville", 11));
+        studentService.patchStudent(student.getId(), new StudentPatch(null, 12, null));
+        outboxRelay.publishPending();
+
+        List<Map<String, String>> events = readEvents(HttpRequest.newBuilder(changesUri("?after=" + start)), 2);
+        assertThat(events).extracting(event -> event.get("event")).containsExactly("change", "change");
+        assertThat(events.get(0).get("data"))
+                .contains("\"entity\":\"student\"", "\"id\":" + student.getId(), "\"type\":\"CREATED\"");
+        assertThat(events.get(1).get("data")).contains("\"type\":\"UPDATED\"");
+        long created = Long.parseLong(events.get(0).get("id"));
+        assertThat(Long.parseLong(events.get(1).get("id"))).isEqualTo(created + 1);
+
+        List<Map<String, String>> resumed = readEvents(HttpRequest.newBuilder(changesUri(""))
+                .header("Last-Event-ID", String.valueOf(created)), 1);
+        assertThat(resumed.get(0).get("id")).isEqualTo(events.get(1).get("id"));
+    }
+
+    @Test
+    public void testNewSubscriberReceivesOnlyLaterChanges() throws Exception {
+        Student student = studentService.createStudent(new Student("Luna", 11));
+        outboxRelay.publishPending();
+
+        HttpResponse<Stream<String>> response = openStream(HttpRequest.newBuilder(changesUri("")));
+        studentService.removeStudent(student.getId());
+        outboxRelay.publishPending();
+
+        List<Map<String, String>> events = readEvents(response, 1);
+        assertThat(events.get(0).get("data"))
+                .contains("\"id\":" + student.getId(), "\"type\":\"DELETED\"");
+    }
+
+    @Test
+    public void testFullQueuePausesSubscriberUntilDrained() {
+        List<Runnable> tasks = new ArrayList<>();
+        OutboxService outbox = mock(OutboxService.class);
+        when(outbox.findChangesAfter(eq(0L), anyInt())).thenReturn(List.of(change(1), change(2), change(3)));
+        when(outbox.findChangesAfter(eq(2L), anyInt())).thenReturn(List.of(change(3)));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ChangeFeed changeFeed = new ChangeFeed(outbox, Duration.ofMinutes(1), 500, 2, Duration.ofHours(1),
+                tasks::add, meterRegistry);
+        changeFeed.subscribe(0L);
+
+        changeFeed.wake();
+        runAll(tasks);
+
+        verify(outbox).findChangesAfter(0L, 500);
+        verify(outbox).findChangesAfter(2L, 500);
+        assertThat(meterRegistry.get("changes.subscribers").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("changes.subscribers.dropped").counter().count()).isZero();
+    }
+
+    @Test
+    public void testStalledSubscriberIsDropped() throws Exception {
+        List<Runnable> tasks = new ArrayList<>();
+        OutboxService outbox = mock(OutboxService.class);
+        when(outbox.findChangesAfter(eq(0L), anyInt())).thenReturn(List.of(change(1), change(2), change(3)));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ChangeFeed changeFeed = new ChangeFeed(outbox, Duration.ofMinutes(1), 500, 2, Duration.ofMillis(1),
+                tasks::add, meterRegistry);
+        changeFeed.subscribe(0L);
+
+        changeFeed.wake();
+        tasks.remove(0).run();
+        // the sender never gets to run, as if it were stuck on the client
+        Thread.sleep(10);
+        changeFeed.wake();
+        tasks.remove(tasks.size() - 1).run();
+
+        assertThat(meterRegistry.get("changes.subscribers").gauge().value()).isZero();
+        assertThat(meterRegistry.get("changes.subscribers.dropped").counter().count()).isEqualTo(1);
+        runAll(tasks);
+    }
+
+    private static ChangeEvent change(long position) {
+        return new ChangeEvent(position, OutboxService.STUDENT, position, ChangeType.UPDATED, Instant.now());
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private URI changesUri(String query) {
+        return URI.create("http://localhost:" + port + "/changes" + query);
+    }
+
+    private HttpResponse<Stream<String>> openStream(HttpRequest.Builder request) throws Exception {
+        HttpResponse<Stream<String>> response = httpClient.send(
+                request.header("Accept", "text/event-stream").build(), HttpResponse.BodyHandlers.ofLines());
+        assertThat(response.statusCode()).isEqualTo(200);
+        return response;
+    }
+
+    private List<Map<String, String>> readEvents(HttpRequest.Builder request, int count) throws Exception {
+        return readEvents(openStream(request), count);
+    }
+
+    private List<Map<String, String>> readEvents(HttpResponse<Stream<String>> response, int count) throws Exception {
+        try (Stream<String> lines = response.body()) {
+            return CompletableFuture.supplyAsync(() -> {
+                List<Map<String, String>> events = new ArrayList<>();
+                Map<String, String> event = new HashMap<>();
+                Iterator<String> iterator = lines.iterator();
+                while (events.size() < count && iterator.hasNext()) {
+                    String line = iterator.next();
+                    if (line.isEmpty()) {
+                        if (!event.isEmpty()) {
+                            events.add(event);
+                            event = new HashMap<>();
+                        }
+                    } else if (!line.startsWith(":")) {
+                        int colon = line.indexOf(':');
+                        event.put(line.substring(0, colon), line.substring(colon + 1));
+                    }
+                }
+                return events;
+            }).get(10, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package ru.hogwarts.school;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import ru.hogwarts.school.config.Coalesced;
+import ru.hogwarts.school.config.CoalescingAspect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CoalescingAspectTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    public static class SlowLookup {
+        final AtomicInteger invocations = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Coalesced
+        public String find(long id) throws InterruptedException {
+            invocations.incrementAndGet();
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            if (id < 0) {
+                throw new IllegalArgumentException("negative id");
+            }
+            return "student " + id;
+        }
+    }
+
+    @Test
+    public void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+        SlowLookup target = new SlowLookup();
+        SlowLookup lookup = proxy(target, 100);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> call(lookup, 1));
+        assertThat(target.started.await(5, TimeUnit.SECONDS)).isTrue();
+        List<CompletableFuture<String>> followers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            followers.add(CompletableFuture.supplyAsync(() -> call(lookup, 1)));
+        }
+        awaitCount("coalesced", 5);
+        target.release.countDown();
+
+        String result = first.get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<String> follower : followers) {
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(result);
+        }
+        assertThat(target.invocations).hasValue(1);
+        assertThat(count("executed")).isEqualTo(1);
+
+        assertThat(lookup.find(1)).isEqualTo("student 1");
+        assertThat(target.invocations).hasValue(2);
+    }
+
+    @Test
+    public void testFailureIsSharedAndUntrackedCallsRunAlone() throws Exception {
+        SlowLookup target = new SlowLookup();
+        SlowLookup lookup = proxy(target, 1);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> call(lookup, -1));
+        assertThat(target.started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> call(lookup, -1));
+        CompletableFuture<String> other = CompletableFuture.supplyAsync(() -> call(lookup, 2));
+        awaitCount("coalesced", 1);
+        awaitCount("untracked", 1);
+        target.release.countDown();
+
+        assertThatThrownBy(() -> follower.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("negative id");
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasRootCauseMessage("negative id");
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo("student 2");
+        assertThat(target.invocations).hasValue(2);
+    }
+
+    private SlowLookup proxy(SlowLookup target, int maxKeys) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new CoalescingAspect(meterRegistry, maxKeys));
+        return factory.getProxy();
+    }
+
+    private static String call(SlowLookup lookup, long id) {
+        try {
+            return lookup.find(id);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.counter("service.coalescing.calls", "method", "SlowLookup.find", "outcome", outcome).count();
+    }
+
+    private void awaitCount(String outcome, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count(outcome) < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(count(outcome)).isEqualTo(expected);
+    }
+}
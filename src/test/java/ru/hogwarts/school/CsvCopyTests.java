@@ -0,0 +1,181 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.CsvImportResult.Reason;
+import ru.hogwarts.school.exceptions.CsvFormatException;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.StudentService;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = "path.to.avatars.folder=target/avatars")
+@Testcontainers(disabledWithoutDocker = true)
+public class CsvCopyTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private FacultyService facultyService;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FacultyRepository facultyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM student");
+        jdbcTemplate.update("DELETE FROM faculty");
+    }
+
+    @Test
+    public void testImportStudentsSkipsInvalidRows() {
+        Faculty faculty = facultyRepository.save(new Faculty("Gryffindor", "red"));
+        studentRepository.save(new Student("Harry", 17));
+        String csv = """
+                name,age,faculty_id
+                Hermione,17,%1$d
+                Harry,18,
+                Ron,15,
+                Ron,abc,
+                ,17,
+                Neville,17,999999
+                Luna,17,
+                Luna,18,
+                "Weasley, Ginny",16,%1$d
+                """.formatted(faculty.getId());
+
+        CsvImportResult result = studentService.importStudentsCsv(csv(csv));
+
+        assertThat(result.imported()).isEqualTo(3);
+        assertThat(result.rejected()).isEqualTo(6);
+        assertThat(result.rejections()).extracting(CsvImportResult.Rejection::row, CsvImportResult.Rejection::reason)
+                .containsExactly(tuple(2L, Reason.DUPLICATE), tuple(3L, Reason.INVALID_AGE), tuple(4L, Reason.INVALID_AGE),
+                        tuple(5L, Reason.INVALID_NAME), tuple(6L, Reason.UNKNOWN_FACULTY), tuple(8L, Reason.DUPLICATE));
+        assertThat(studentService.findByFaculty(faculty.getId())).extracting(Student::getName)
+                .containsExactlyInAnyOrder("Hermione", "Weasley, Ginny");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event " +
+                "WHERE entity = 'student' AND change_type = 'CREATED' AND entity_id IN " +
+                "(SELECT id FROM student WHERE name IN ('Hermione', 'Luna', 'Weasley, Ginny'))", Long.class)).isEqualTo(3);
+        // ids taken by the import must not collide with the ones Hibernate allocates afterwards
+        assertThat(studentService.createStudent(new Student("Ginny", 16)).getId()).isNotNull();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        studentService.exportStudentsCsv(out);
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .startsWith("id,name,age,faculty_id\n")
+                .contains(",Harry,17,\n", ",\"Weasley, Ginny\",16," + faculty.getId() + "\n")
+                .hasLineCount(6);
+    }
+
+    @Test
+    public void testMalformedCsvIsRejectedAsAWhole() {
+        assertThatThrownBy(() -> studentService.importStudentsCsv(csv("name,age,faculty_id\nHermione,17,,extra\n")))
+                .isInstanceOf(CsvFormatException.class);
+        assertThat(studentRepository.count()).isZero();
+    }
+
+    @Test
+    public void testImportAndExportFaculties() {
+        facultyRepository.save(new Faculty("Gryffindor", "red"));
+        CsvImportResult result = facultyService.importFacultiesCsv(csv("""
+                name,colour
+                Gryffindor,red
+                Gryffindor,gold
+                Slytherin,
+                Ravenclaw,blue
+                Ravenclaw,blue
+                """));
+
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(result.rejections()).extracting(CsvImportResult.Rejection::row, CsvImportResult.Rejection::reason)
+                .containsExactly(tuple(1L, Reason.DUPLICATE), tuple(3L, Reason.INVALID_COLOUR), tuple(5L, Reason.DUPLICATE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        facultyService.exportFacultiesCsv(out);
+        assertThat(out.toString(StandardCharsets.UTF_8))
+                .startsWith("id,name,colour\n")
+                .contains(",Gryffindor,gold\n", ",Ravenclaw,blue\n")
+                .hasLineCount(4);
+    }
+
+    @Test
+    public void testOverlongFacultyValuesAreRejected() {
+        String longText = "x".repeat(256);
+        CsvImportResult result = facultyService.importFacultiesCsv(csv("""
+                name,colour
+                %1$s,red
+                Hufflepuff,%1$s
+                Hufflepuff,yellow
+                """.formatted(longText)));
+
+        assertThat(result.imported()).isEqualTo(1);
+        assertThat(result.rejections()).extracting(CsvImportResult.Rejection::row, CsvImportResult.Rejection::reason)
+                .containsExactly(tuple(1L, Reason.INVALID_NAME), tuple(2L, Reason.INVALID_COLOUR));
+    }
+
+    @Test
+    public void testRowsTakenConcurrentlyAreListedAsDuplicates() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO faculty (id, name, colour, version) VALUES (nextval('faculty_seq'), 'Slytherin', 'green', 0)");
+            }
+            CompletableFuture<CsvImportResult> result = CompletableFuture.supplyAsync(() ->
+                    facultyService.importFacultiesCsv(csv("name,colour\nRavenclaw,blue\nSlytherin,green\n")));
+            // the import waits on the unique index until the other transaction commits
+            Thread.sleep(500);
+            connection.commit();
+
+            assertThat(result.get(10, TimeUnit.SECONDS).imported()).isEqualTo(1);
+            assertThat(result.get().rejected()).isEqualTo(1);
+            assertThat(result.get().rejections()).extracting(CsvImportResult.Rejection::row, CsvImportResult.Rejection::reason)
+                    .containsExactly(tuple(2L, Reason.DUPLICATE));
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox_event " +
+                "WHERE entity = 'faculty' AND entity_id IN (SELECT id FROM faculty WHERE name = 'Slytherin')", Long.class))
+                .isZero();
+    }
+
+    private static InputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
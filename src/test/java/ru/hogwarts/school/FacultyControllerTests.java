@@ -11,6 +11,10 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.hogwarts.school.controller.FacultyController;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.FacultyStats;
+import ru.hogwarts.school.dto.NameMatch;
 import ru.hogwarts.school.exceptions.NoSuchFacultyException;
 import ru.hogwarts.school.model.Faculty;
 import ru.hogwarts.school.model.Student;
@@ -25,6 +29,8 @@ import static org.hamcrest.Matchers.*;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.hasSize;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.mockito.Mockito.when;
@@ -59,6 +65,7 @@ public class FacultyControllerTests {
         faculty.setId(id);
         faculty.setName(name);
         faculty.setColour(colour);
+        faculty.setVersion(0L);
     }
 
     @Test
@@ -81,6 +88,7 @@ public class FacultyControllerTests {
         when(facultyRepository.save(any())).thenReturn(faculty);
         when(facultyService.editFaculty(any())).thenReturn(faculty);
         facultyObject.put("id", id);
+        facultyObject.put("version", 0);
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/faculties")
                         .content(facultyObject.toString())
@@ -92,6 +100,91 @@ public class FacultyControllerTests {
                 .andExpect(jsonPath("$.colour").value(colour));
     }
 
+    @Test
+    public void testEditFacultyWithoutVersion() throws Exception {
+        facultyObject.put("id", id);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/faculties")
+                        .content(facultyObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionRequired());
+        verify(facultyService, never()).editFaculty(any());
+    }
+
+    @Test
+    public void testImportFacultiesFromCsv() throws Exception {
+        when(facultyService.importFacultiesCsv(any())).thenReturn(new CsvImportResult(2, 0, List.of()));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/faculties/batch")
+                        .content("name,colour\nGryffindor,red\nSlytherin,green\n")
+                        .contentType("text/csv")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(2))
+                .andExpect(jsonPath("$.rejections", hasSize(0)));
+    }
+
+    @Test
+    public void testCreateFacultiesBatch() throws Exception {
+        when(facultyService.createFaculties(anyList())).thenReturn(List.of(
+                new BatchItemResult(0, 10L, BatchItemResult.Status.CREATED),
+                new BatchItemResult(1, 11L, BatchItemResult.Status.CREATED)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/faculties/batch")
+                        .content("[{\"name\":\"Gryffindor\",\"colour\":\"red\"},{\"name\":\"Slytherin\",\"colour\":\"green\"}]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].id").value(11))
+                .andExpect(jsonPath("$[1].status").value("CREATED"));
+        verify(facultyService).createFaculties(argThat(list -> list.size() == 2 && list.get(1).getColour().equals("green")));
+    }
+
+    @Test
+    public void testImportFacultiesFromNdjson() throws Exception {
+        when(facultyService.createFaculties(anyList())).thenReturn(List.of(
+                new BatchItemResult(0, 10L, BatchItemResult.Status.CREATED)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/faculties/batch")
+                        .content("{\"name\":\"Gryffindor\",\"colour\":\"red\"}\n")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(10));
+    }
+
+    @Test
+    public void testEditFacultiesBatch() throws Exception {
+        when(facultyService.editFaculties(anyList())).thenReturn(List.of(
+                new BatchItemResult(0, 1L, BatchItemResult.Status.UPDATED),
+                new BatchItemResult(1, 2L, BatchItemResult.Status.CONFLICT)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/faculties/batch")
+                        .content("[{\"id\":1,\"name\":\"Gryffindor\",\"colour\":\"red\"},{\"id\":2,\"name\":\"Slytherin\",\"colour\":\"green\",\"version\":3}]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].status").value("CONFLICT"));
+        verify(facultyService).editFaculties(argThat(list -> list.get(1).getVersion() == 3L));
+    }
+
+    @Test
+    public void testDeleteFacultiesBatch() throws Exception {
+        when(facultyService.removeFaculties(List.of(1L, 2L))).thenReturn(List.of(
+                new BatchItemResult(0, 1L, BatchItemResult.Status.DELETED),
+                new BatchItemResult(1, 2L, BatchItemResult.Status.NOT_FOUND)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete("/faculties/batch")
+                        .content("[1,2]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("DELETED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+    }
+
     @Test
     public void testGetFacultyInfo() throws Exception {
         when(facultyService.findFaculty(eq(id))).thenReturn(faculty);
@@ -105,6 +198,39 @@ public class FacultyControllerTests {
                 .andExpect(jsonPath("$.colour").value(colour));
     }
 
+    @Test
+    public void testLongestNameIsNotRecomputedWhileUnchanged() throws Exception {
+        when(facultyService.getLongestFacultyName()).thenReturn(name);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/faculties/longest-name"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=10, must-revalidate"))
+                .andExpect(content().string(name))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/faculties/longest-name").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(facultyService, times(1)).getLongestFacultyName();
+    }
+
+    @Test
+    public void testGetFacultyStats() throws Exception {
+        when(facultyService.getFacultyStats()).thenReturn(List.of(
+                new FacultyStats(id, name, 4L, 11, 17, 54L, 1L),
+                new FacultyStats(2L, "empty", null, null, null, null, null)));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/faculties/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].studentCount").value(4))
+                .andExpect(jsonPath("$[0].minAge").value(11))
+                .andExpect(jsonPath("$[0].maxAge").value(17))
+                .andExpect(jsonPath("$[0].averageAge").value(13.5))
+                .andExpect(jsonPath("$[0].avatarCoverage").value(0.25))
+                .andExpect(jsonPath("$[1].studentCount").value(0))
+                .andExpect(jsonPath("$[1].averageAge").doesNotExist())
+                .andExpect(jsonPath("$[1].avatarCoverage").value(0.0));
+    }
+
     @Test
     public void testDeleteFaculty() throws Exception {
         doNothing().when(facultyService).removeFaculty(eq(id));
@@ -159,4 +285,15 @@ public class FacultyControllerTests {
                 .andExpect(jsonPath("$.name").value(name))
                 .andExpect(jsonPath("$.colour").value(colour));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSearchFacultiesByNameDefaultsToPrefix() throws Exception {
+        when(facultyService.searchFacultiesByName("aa", NameMatch.PREFIX, 0, 20)).thenReturn(List.of(faculty));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/faculties/search-by-name")
+                        .param("query", "aa")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value(name));
+    }
+}
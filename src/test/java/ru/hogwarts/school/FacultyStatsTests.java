@@ -0,0 +1,169 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.dto.FacultyStats;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.StudentService;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the trigger-maintained counters behind {@code /faculties/stats} always
+ * agree with statistics computed from scratch over the student table.
+ */
+@SpringBootTest(properties = {
+        "path.to.avatars.folder=target/avatars",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class FacultyStatsTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Autowired
+    private FacultyService facultyService;
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private FacultyRepository facultyRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private AvatarRepository avatarRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM avatar_thumbnail");
+        avatarRepository.deleteAllInBatch();
+        jdbcTemplate.update("DELETE FROM student");
+        facultyRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testStatsFollowStudentAndAvatarWrites() {
+        Faculty gryffindor = facultyRepository.save(new Faculty("Gryffindor", "red"));
+        Faculty ravenclaw = facultyRepository.save(new Faculty("Ravenclaw", "blue"));
+        facultyRepository.save(new Faculty("Hufflepuff", "yellow"));
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Student student = new Student("Student " + i, 16 + i % 4);
+            student.setFaculty(i % 3 == 0 ? ravenclaw : gryffindor);
+            students.add(student);
+        }
+        students = studentRepository.saveAll(students);
+        avatarRepository.saveAll(students.subList(0, 5).stream()
+                .map(student -> new Avatar(null, "target/avatars/" + student.getId() + ".png", "image/png", 1L, student))
+                .toList());
+        assertStatsAreExact();
+        FacultyStats gryffindorStats = facultyService.getFacultyStats().get(0);
+        assertThat(gryffindorStats.studentCount()).isEqualTo(8);
+        assertThat(gryffindorStats.minAge()).isEqualTo(16);
+        assertThat(gryffindorStats.maxAge()).isEqualTo(19);
+        assertThat(facultyService.getFacultyStats().get(2).studentCount()).isZero();
+
+        studentService.patchStudent(students.get(1).getId(), new StudentPatch(null, 30, null));
+        studentService.patchStudent(students.get(2).getId(), new StudentPatch("Renamed", null, null));
+        jdbcTemplate.update("UPDATE student SET faculty_id = ? WHERE id = ?", ravenclaw.getId(), students.get(4).getId());
+        jdbcTemplate.update("UPDATE avatar SET student_id = ? WHERE student_id = ?", students.get(7).getId(), students.get(0).getId());
+        assertStatsAreExact();
+
+        studentService.removeStudent(students.get(1).getId());
+        studentService.removeStudents(List.of(students.get(7).getId(), students.get(8).getId()));
+        jdbcTemplate.update("UPDATE student SET deleted_at = now(), faculty_id = NULL WHERE id = ?", students.get(3).getId());
+        assertStatsAreExact();
+        assertThat(facultyService.getFacultyStats().get(0).maxAge()).isEqualTo(19);
+    }
+
+    @Test
+    public void testStatsStayExactWhenAvatarAndStudentWritesOverlap() throws Exception {
+        Faculty gryffindor = facultyRepository.save(new Faculty("Gryffindor", "red"));
+        Faculty ravenclaw = facultyRepository.save(new Faculty("Ravenclaw", "blue"));
+        Student student = new Student("Neville", 16);
+        student.setFaculty(gryffindor);
+        long id = studentRepository.save(student).getId();
+
+        // the avatar insert has to wait for the uncommitted move of its student
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            execute(connection, "UPDATE student SET faculty_id = " + ravenclaw.getId() + " WHERE id = " + id);
+            CompletableFuture<Integer> insert = CompletableFuture.supplyAsync(() -> jdbcTemplate.update(
+                    "INSERT INTO avatar (id, file_size, student_id) VALUES (nextval('avatar_seq'), 1, ?)", id));
+            Thread.sleep(500);
+            assertThat(insert).isNotDone();
+            connection.commit();
+            insert.get(10, TimeUnit.SECONDS);
+        }
+        assertStatsAreExact();
+
+        // and a move of the student has to wait for the uncommitted avatar delete
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            execute(connection, "DELETE FROM avatar WHERE student_id = " + id);
+            CompletableFuture<Integer> update = CompletableFuture.supplyAsync(() -> jdbcTemplate.update(
+                    "UPDATE student SET faculty_id = ? WHERE id = ?", gryffindor.getId(), id));
+            Thread.sleep(500);
+            assertThat(update).isNotDone();
+            connection.commit();
+            update.get(10, TimeUnit.SECONDS);
+        }
+        assertStatsAreExact();
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private void assertStatsAreExact() {
+        List<FacultyStats> expected = jdbcTemplate.query("""
+                        SELECT f.id, f.name, COUNT(s.id) AS students, MIN(s.age) AS min_age, MAX(s.age) AS max_age,
+                               SUM(s.age) AS age_sum, COUNT(a.id) AS avatars
+                        FROM faculty f
+                        LEFT JOIN student s ON s.faculty_id = f.id AND s.deleted_at IS NULL
+                        LEFT JOIN avatar a ON a.student_id = s.id
+                        GROUP BY f.id, f.name ORDER BY f.id""",
+                (rs, row) -> new FacultyStats(rs.getLong("id"), rs.getString("name"), rs.getLong("students"),
+                        (Integer) rs.getObject("min_age"), (Integer) rs.getObject("max_age"),
+                        (Long) rs.getObject("age_sum"), rs.getLong("avatars")));
+        assertThat(facultyService.getFacultyStats()).isEqualTo(expected);
+    }
+}
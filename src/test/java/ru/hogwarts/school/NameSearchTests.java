@@ -0,0 +1,110 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.FacultyService;
+import ru.hogwarts.school.service.StudentService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.hogwarts.school.dto.NameMatch.FUZZY;
+import static ru.hogwarts.school.dto.NameMatch.PREFIX;
+import static ru.hogwarts.school.dto.NameMatch.SUBSTRING;
+
+/**
+ * Runs the native prefix, substring and trigram name searches against PostgreSQL,
+ * which H2 cannot stand in for: {@code ESCAPE}, {@code position} ordering and the
+ * {@code %} similarity operator of pg_trgm.
+ */
+@SpringBootTest(properties = {
+        "path.to.avatars.folder=target/avatars",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class NameSearchTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private FacultyService facultyService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seed() {
+        jdbcTemplate.update("DELETE FROM outbox_event");
+        jdbcTemplate.update("DELETE FROM student");
+        jdbcTemplate.update("DELETE FROM faculty");
+        jdbcTemplate.update("INSERT INTO student (id, name, age) VALUES " +
+                "(1, 'Harry Potter', 17), (2, 'Harriet Vane', 17), (3, 'Charlie Harper', 18), " +
+                "(4, 'Hermione Granger', 17), (5, 'Ron_Weasley', 17), (6, 'Hardly There', 17)");
+        jdbcTemplate.update("UPDATE student SET deleted_at = now() WHERE id = 6");
+        jdbcTemplate.update("INSERT INTO faculty (id, name, colour) VALUES " +
+                "(1, 'Gryffindor', 'red'), (2, 'Hufflepuff', 'yellow'), (3, 'Ravenclaw', 'blue'), (4, 'Slytherin', 'green')");
+    }
+
+    @Test
+    public void testStudentPrefixSearchOrdersShortestFirstAndSkipsDeleted() {
+        assertThat(studentService.searchStudentsByName(" HAR", PREFIX, 0, 10))
+                .extracting(Student::getName)
+                .containsExactly("Harriet Vane", "Harry Potter");
+        assertThat(studentService.searchStudentsByName("har", PREFIX, 1, 1))
+                .extracting(Student::getName)
+                .containsExactly("Harry Potter");
+    }
+
+    @Test
+    public void testStudentSubstringSearchOrdersEarliestMatchFirst() {
+        assertThat(studentService.searchStudentsByName("har", SUBSTRING, 0, 10))
+                .extracting(Student::getName)
+                .containsExactly("Harriet Vane", "Harry Potter", "Charlie Harper");
+    }
+
+    @Test
+    public void testStudentSearchTreatsWildcardsLiterally() {
+        assertThat(studentService.searchStudentsByName("_", SUBSTRING, 0, 10))
+                .extracting(Student::getName)
+                .containsExactly("Ron_Weasley");
+        assertThat(studentService.searchStudentsByName("%", PREFIX, 0, 10)).isEmpty();
+    }
+
+    @Test
+    public void testStudentFuzzySearchToleratesTypos() {
+        assertThat(studentService.searchStudentsByName("hary poter", FUZZY, 0, 10))
+                .extracting(Student::getName)
+                .first()
+                .isEqualTo("Harry Potter");
+        assertThat(studentService.searchStudentsByName("hardly ther", FUZZY, 0, 10))
+                .extracting(Student::getName)
+                .doesNotContain("Hardly There");
+    }
+
+    @Test
+    public void testFacultySearches() {
+        assertThat(facultyService.searchFacultiesByName("gry", PREFIX, 0, 10))
+                .extracting(Faculty::getName)
+                .containsExactly("Gryffindor");
+        assertThat(facultyService.searchFacultiesByName("ff", SUBSTRING, 0, 10))
+                .extracting(Faculty::getName)
+                .containsExactly("Hufflepuff", "Gryffindor");
+        assertThat(facultyService.searchFacultiesByName("slytherine", FUZZY, 0, 10))
+                .extracting(Faculty::getName)
+                .containsExactly("Slytherin");
+    }
+}
@@ -0,0 +1,172 @@
+package ru.hogwarts.school;
+
+import io.r2dbc.spi.Connection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import reactor.core.publisher.Mono;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.OutboxRelay;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Runs the {@code reactive} profile with JDBC and R2DBC sharing one in-memory H2
+ * database, so rows written through JPA are read back over R2DBC. The R2DBC pool holds
+ * a single connection, so a test can exhaust it.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:reactive;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive;DB_CLOSE_DELAY=-1",
+        "spring.r2dbc.username=sa",
+        "spring.r2dbc.password=",
+        "spring.r2dbc.pool.initial-size=1",
+        "spring.r2dbc.pool.max-size=1",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "path.to.avatars.folder=target/avatars"
+})
+@ActiveProfiles("reactive")
+@AutoConfigureMockMvc
+public class ReactiveReadTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private FacultyRepository facultyRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private R2dbcEntityTemplate r2dbcEntityTemplate;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    @MockitoBean
+    private OutboxRelay outboxRelay;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM student");
+        jdbcTemplate.update("DELETE FROM faculty");
+    }
+
+    @Test
+    public void testStudentReads() throws Exception {
+        Faculty faculty = facultyRepository.save(new Faculty("Ravenclaw", "blue"));
+        Student luna = new Student("Luna", 17);
+        luna.setFaculty(faculty);
+        luna = studentRepository.save(luna);
+        Student cho = studentRepository.save(new Student("Cho", 18));
+        Student marietta = studentRepository.save(new Student("Marietta", 18));
+        jdbcTemplate.update("UPDATE student SET deleted_at = CURRENT_TIMESTAMP WHERE id = ?", marietta.getId());
+
+        perform(MockMvcRequestBuilders.get("/reactive/students/{id}", luna.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Luna"))
+                .andExpect(jsonPath("$.version").value(0));
+        perform(MockMvcRequestBuilders.get("/reactive/students/{id}", marietta.getId()))
+                .andExpect(status().isNotFound());
+        perform(MockMvcRequestBuilders.get("/reactive/students/byAgeBetween?min=17&max=18")
+                .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", contains("Luna", "Cho")));
+        perform(MockMvcRequestBuilders.get("/reactive/students/byAge?age=18")
+                .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string("{\"id\":" + cho.getId() + ",\"name\":\"Cho\",\"age\":18,\"version\":0}\n"));
+        perform(MockMvcRequestBuilders.get("/reactive/students/byFaculty/{id}", faculty.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", contains("Luna")));
+    }
+
+    @Test
+    public void testFacultyReads() throws Exception {
+        Faculty faculty = facultyRepository.save(new Faculty("Hufflepuff", "yellow"));
+        Student cedric = new Student("Cedric", 17);
+        cedric.setFaculty(faculty);
+        studentRepository.save(cedric);
+
+        perform(MockMvcRequestBuilders.get("/reactive/faculties/{id}", faculty.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.colour").value("yellow"));
+        perform(MockMvcRequestBuilders.get("/reactive/faculties/byColourOrName?colour=YELLOW"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", contains("Hufflepuff")));
+        perform(MockMvcRequestBuilders.get("/reactive/faculties/faculty/{name}", "cedric"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name").value("Hufflepuff"));
+        perform(MockMvcRequestBuilders.get("/reactive/faculties/faculty/{name}", "Voldemort"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testBusyPoolIsAnsweredWithServiceUnavailable() throws Exception {
+        studentRepository.save(new Student("Neville", 17));
+        Connection held = Mono.from(r2dbcEntityTemplate.getDatabaseClient().getConnectionFactory().create()).block();
+        try {
+            perform(MockMvcRequestBuilders.get("/reactive/students/byAge?age=17"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string("Retry-After", "1"));
+        } finally {
+            Mono.from(held.close()).block();
+        }
+        perform(MockMvcRequestBuilders.get("/reactive/students/byAge?age=17"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", contains("Neville")));
+    }
+
+    @Test
+    public void testReleasedConnectionIsHandedOverOnAnotherThread() {
+        var connectionFactory = r2dbcEntityTemplate.getDatabaseClient().getConnectionFactory();
+        Connection held = Mono.from(connectionFactory.create()).block();
+        // a reader queued behind the held connection; with the pool's default scheduler it
+        // would run on the thread that releases the connection
+        var waiting = Mono.from(connectionFactory.create())
+                .flatMap(connection -> Mono.from(connection.close()).thenReturn(Thread.currentThread()))
+                .toFuture();
+
+        Mono.from(held.close()).block();
+
+        assertThat(waiting.join()).isNotSameAs(Thread.currentThread());
+    }
+
+    private ResultActions perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,103 @@
+package ru.hogwarts.school;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.config.ReplicaRouter;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.StudentService;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Uses a second, independent PostgreSQL as a stand-in replica: rows written only
+ * there show which database served a query.
+ */
+@SpringBootTest(properties = {
+        "path.to.avatars.folder=target/avatars",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "datasource.replica.check-interval=1h"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class ReadReplicaRoutingTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private static JdbcTemplate replicaJdbcTemplate;
+
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry) {
+        registry.add("datasource.replica.urls", replica::getJdbcUrl);
+    }
+
+    @BeforeAll
+    static void migrateReplica() throws Exception {
+        DataSource replicaDataSource = new DriverManagerDataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword());
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(replicaDataSource);
+        liquibase.setChangeLog("classpath:liquibase/changelog-master.yml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+    }
+
+    @BeforeEach
+    void checkReplicas() {
+        replicaRouter.checkReplicationLag();
+    }
+
+    @Test
+    public void testReadOnlyMethodsUseReplica() {
+        replicaJdbcTemplate.update("INSERT INTO student (id, name, age) VALUES (1000001, 'Replica Only', 31)");
+
+        assertThat(studentService.findByAge(31)).extracting(Student::getName).containsExactly("Replica Only");
+        assertThat(studentService.findStudent(1000001L).getName()).isEqualTo("Replica Only");
+        assertThat(meterRegistry.get("datasource.replica.available").tag("pool", "replica-1").gauge().value()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void testWritesUsePrimary() {
+        Student created = studentService.createStudent(new Student("Primary Only", 32));
+
+        assertThat(new JdbcTemplate(dataSource).queryForObject("SELECT name FROM student WHERE id = ?", String.class, created.getId()))
+                .isEqualTo("Primary Only");
+        assertThat(replicaJdbcTemplate.queryForObject("SELECT count(*) FROM student WHERE age = 32", Integer.class)).isZero();
+        assertThat(meterRegistry.get("hikaricp.connections").tag("pool", "primary").gauge()).isNotNull();
+        assertThat(meterRegistry.get("hikaricp.connections").tag("pool", "replica-1").gauge()).isNotNull();
+    }
+}
@@ -0,0 +1,102 @@
+package ru.hogwarts.school;
+
+import jakarta.persistence.EntityManagerFactory;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.config.ReplicaRouter;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.StudentService;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs with the second-level and query caches on. As in {@link ReadReplicaRoutingTests},
+ * an independent PostgreSQL stands in for the replica, and rows changed only there
+ * stand for writes it has not applied yet.
+ */
+@SpringBootTest(properties = {
+        "path.to.avatars.folder=target/avatars",
+        "datasource.replica.check-interval=1h"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class ReplicaCachingTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Container
+    static PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private ReplicaRouter replicaRouter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private static JdbcTemplate replicaJdbcTemplate;
+
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry) {
+        registry.add("datasource.replica.urls", replica::getJdbcUrl);
+    }
+
+    @BeforeAll
+    static void migrateReplica() throws Exception {
+        DataSource replicaDataSource = new DriverManagerDataSource(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword());
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(replicaDataSource);
+        liquibase.setChangeLog("classpath:liquibase/changelog-master.yml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        replicaJdbcTemplate = new JdbcTemplate(replicaDataSource);
+    }
+
+    @BeforeEach
+    void checkReplicas() {
+        replicaRouter.checkReplicationLag();
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    public void testReplicaReadsAreNotCached() {
+        replicaJdbcTemplate.update("INSERT INTO student (id, name, age) VALUES (1000001, 'Lagging Copy', 41)");
+
+        assertThat(studentService.findByAge(41)).extracting(Student::getName).containsExactly("Lagging Copy");
+        assertThat(studentService.findStudent(1000001L).getName()).isEqualTo("Lagging Copy");
+        assertThat(entityManagerFactory.getCache().contains(Student.class, 1000001L)).isFalse();
+
+        replicaJdbcTemplate.update("UPDATE student SET name = 'Caught Up', version = version + 1 WHERE id = 1000001");
+
+        assertThat(studentService.findByAge(41)).extracting(Student::getName).containsExactly("Caught Up");
+        assertThat(studentService.findStudent(1000001L).getName()).isEqualTo("Caught Up");
+    }
+
+    @Test
+    public void testStudentsWrittenToPrimaryStayCached() {
+        Student created = studentService.createStudent(new Student("Primary Only", 42));
+
+        assertThat(entityManagerFactory.getCache().contains(Student.class, created.getId())).isTrue();
+        assertThat(studentService.findStudent(created.getId()).getName()).isEqualTo("Primary Only");
+    }
+}
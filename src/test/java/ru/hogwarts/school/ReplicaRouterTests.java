@@ -0,0 +1,45 @@
+package ru.hogwarts.school;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.hogwarts.school.config.ReplicaRouter;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReplicaRouterTests {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReplicaRouter replicaRouter = new ReplicaRouter(pool("primary"), List.of(pool("replica-1")),
+            Duration.ofSeconds(5), meterRegistry);
+
+    @AfterEach
+    void closePools() {
+        replicaRouter.close();
+    }
+
+    @Test
+    public void testReadsFallBackToPrimaryWhenLagIsUnknown() throws Exception {
+        replicaRouter.bindTo(meterRegistry);
+        replicaRouter.checkReplicationLag();
+
+        try (Connection connection = replicaRouter.getReadOnlyDataSource().getConnection()) {
+            assertThat(connection.getMetaData().getURL()).isEqualTo("jdbc:h2:mem:primary");
+        }
+        assertThat(meterRegistry.get("datasource.replica.available").tag("pool", "replica-1").gauge().value()).isZero();
+        assertThat(meterRegistry.get("hikaricp.connections").tag("pool", "primary").gauge()).isNotNull();
+    }
+
+    private static HikariDataSource pool(String name) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:" + name);
+        pool.setUsername("sa");
+        pool.setPoolName(name);
+        return pool;
+    }
+}
@@ -0,0 +1,53 @@
+package ru.hogwarts.school;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.core.spi.FilterReply;
+import org.junit.jupiter.api.Test;
+import ru.hogwarts.school.config.SamplingTurboFilter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SamplingTurboFilterTests {
+
+    private final LoggerContext loggerContext = new LoggerContext();
+    private final SamplingTurboFilter filter = new SamplingTurboFilter();
+
+    @Test
+    public void testPassesEveryNthDebugEventPerTemplate() {
+        filter.setLoggerPrefix("ru.hogwarts.school");
+        filter.setRate(3);
+        Logger logger = loggerContext.getLogger("ru.hogwarts.school.service.StudentService");
+        logger.setLevel(Level.DEBUG);
+
+        assertThat(decide(logger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(logger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.DENY);
+        assertThat(decide(logger, Level.DEBUG, "Finding faculty method invoked")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(logger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.DENY);
+        assertThat(decide(logger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(logger, Level.INFO, "Finding student method invoked")).isEqualTo(FilterReply.NEUTRAL);
+    }
+
+    @Test
+    public void testIgnoresDisabledLevelsAndOtherLoggers() {
+        filter.setLoggerPrefix("ru.hogwarts.school");
+        filter.setRate(2);
+        Logger serviceLogger = loggerContext.getLogger("ru.hogwarts.school.service.StudentService");
+        serviceLogger.setLevel(Level.INFO);
+        Logger otherLogger = loggerContext.getLogger("org.hibernate.SQL");
+        otherLogger.setLevel(Level.DEBUG);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(decide(serviceLogger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.NEUTRAL);
+            assertThat(decide(otherLogger, Level.DEBUG, "select")).isEqualTo(FilterReply.NEUTRAL);
+        }
+        serviceLogger.setLevel(Level.DEBUG);
+        assertThat(decide(serviceLogger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.NEUTRAL);
+        assertThat(decide(serviceLogger, Level.DEBUG, "Finding student method invoked")).isEqualTo(FilterReply.DENY);
+    }
+
+    private FilterReply decide(Logger logger, Level level, String format) {
+        return filter.decide(null, logger, level, format, null, null);
+    }
+}
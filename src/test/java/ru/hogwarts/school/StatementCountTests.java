@@ -0,0 +1,210 @@
+package ru.hogwarts.school;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.Faculty;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.FacultyRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.OutboxRelay;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Guards the fetch plan of read endpoints: each one must stay within a fixed number
+ * of SQL statements however many rows it returns. Edits must stay a single UPDATE plus the outbox insert. The second-level cache is off so
+ * that an N+1 cannot hide behind cache hits.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:statements",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "path.to.avatars.folder=target/avatars"
+})
+@AutoConfigureMockMvc
+public class StatementCountTests {
+
+    private static final int STUDENTS_PER_FACULTY = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private FacultyRepository facultyRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private AvatarRepository avatarRepository;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    @MockitoBean
+    private OutboxRelay outboxRelay;
+
+    private Statistics statistics;
+    private Faculty faculty;
+
+    @BeforeEach
+    void setUp() {
+        List<Faculty> faculties = new ArrayList<>();
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Faculty newFaculty = new Faculty();
+            newFaculty.setName("Faculty " + i);
+            newFaculty.setColour("colour " + i);
+            faculties.add(newFaculty);
+            for (int j = 0; j < STUDENTS_PER_FACULTY; j++) {
+                Student student = new Student("Student " + i + "-" + j, 11 + j);
+                student.setFaculty(newFaculty);
+                students.add(student);
+            }
+        }
+        facultyRepository.saveAll(faculties);
+        studentRepository.saveAll(students);
+        avatarRepository.saveAll(students.stream()
+                .map(student -> new Avatar(null, "target/avatars/" + student.getId() + ".png", "image/png", 1L, student))
+                .toList());
+        faculty = faculties.get(0);
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void tearDown() {
+        avatarRepository.deleteAllInBatch();
+        studentRepository.deleteAllInBatch();
+        facultyRepository.deleteAllInBatch();
+    }
+
+    @Test
+    public void testGetAllStudents() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/students"));
+    }
+
+    @Test
+    public void testGetStudentsPage() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/students/page").param("size", "10"));
+    }
+
+    @Test
+    public void testFindStudentsByFaculty() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/students/byFaculty/{id}", faculty.getId()));
+    }
+
+    @Test
+    public void testGetFacultyInfo() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/faculties/{id}", faculty.getId()));
+    }
+
+    @Test
+    public void testFindByColourOrName() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/faculties/byColourOrName").param("colour", "colour 1"));
+    }
+
+    @Test
+    public void testGetFacultyStats() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/faculties/stats"));
+    }
+
+    @Test
+    public void testFindFacultyOfStudent() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/faculties/faculty/{name}", "Student 0-0"));
+    }
+
+    @Test
+    public void testSearchStudents() throws Exception {
+        assertStatementsAtMost(1, MockMvcRequestBuilders.get("/students/search")
+                .param("facultyId", String.valueOf(faculty.getId()))
+                .param("minAge", "12")
+                .param("namePrefix", "stud")
+                .param("hasAvatar", "true")
+                .param("sort", "age,desc"));
+    }
+
+    @Test
+    public void testGetAllAvatars() throws Exception {
+        assertStatementsAtMost(2, MockMvcRequestBuilders.get("/avatar").param("page", "1").param("size", "10"));
+    }
+
+    @Test
+    public void testRevalidatedFacultyIsSingleLookup() throws Exception {
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/faculties/{id}", faculty.getId()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.get("/faculties/{id}", faculty.getId()).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        // the tag is the row version, read by primary key (from the second-level cache in production)
+        assertThat(statistics.getPrepareStatementCount()).as("SQL statements issued").isEqualTo(1);
+    }
+
+    @Test
+    public void testPatchStudentIsSingleUpdate() throws Exception {
+        Student student = studentRepository.findAll().get(0);
+        statistics.clear();
+        mockMvc.perform(MockMvcRequestBuilders.patch("/students/{id}", student.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"age\": 17, \"version\": " + student.getVersion() + "}"))
+                .andExpect(status().isNoContent());
+        // update, outbox insert and, once per 50 events, a sequence call
+        assertThat(statistics.getPrepareStatementCount()).as("SQL statements issued").isLessThanOrEqualTo(3);
+
+        mockMvc.perform(MockMvcRequestBuilders.patch("/students/{id}", student.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"age\": 18, \"version\": " + student.getVersion() + "}"))
+                .andExpect(status().isConflict());
+        Student patchedStudent = studentRepository.findById(student.getId()).orElseThrow();
+        assertThat(patchedStudent.getAge()).isEqualTo(17);
+        assertThat(patchedStudent.getName()).isEqualTo(student.getName());
+        assertThat(patchedStudent.getVersion()).isEqualTo(student.getVersion() + 1);
+    }
+
+    @Test
+    public void testDeleteStudentUsesBulkStatements() throws Exception {
+        Student student = studentRepository.findAll().get(0);
+        // avatar thumbnails, avatar, student, outbox insert and, once per 50 events, a sequence call
+        assertStatementsAtMost(5, MockMvcRequestBuilders.delete("/students/{id}", student.getId()));
+        assertThat(studentRepository.existsById(student.getId())).isFalse();
+    }
+
+    private void assertStatementsAtMost(int maxStatements, RequestBuilder request) throws Exception {
+        statistics.clear();
+        mockMvc.perform(request).andExpect(status().isOk());
+        assertThat(statistics.getPrepareStatementCount())
+                .as("SQL statements issued")
+                .isLessThanOrEqualTo(maxStatements);
+    }
+}
@@ -0,0 +1,168 @@
+package ru.hogwarts.school;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.OutboxRelay;
+import ru.hogwarts.school.service.StudentService;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the cached read paths against H2 with the caches configured as in production.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:caching",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "path.to.avatars.folder=target/avatars"
+})
+public class StudentCachingTests {
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    @MockitoBean
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        // cache regions are shared by every test context in the JVM, and so are the ids of their H2 databases
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM outbox_event");
+        jdbcTemplate.update("DELETE FROM student");
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    @Test
+    public void testFoundStudentIsServedFromSecondLevelCacheUntilEdited() {
+        Student student = studentService.createStudent(new Student("Cedric", 17));
+        Statistics statistics = statistics();
+
+        studentService.findStudent(student.getId());
+        long statements = statistics.getPrepareStatementCount();
+        assertThat(studentService.findStudent(student.getId()).getName()).isEqualTo("Cedric");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+        assertThat(statistics.getDomainDataRegionStatistics("student").getHitCount()).isPositive();
+
+        studentService.patchStudent(student.getId(), new StudentPatch("Cedric Diggory", null, null));
+        assertThat(studentService.findStudent(student.getId()).getName()).isEqualTo("Cedric Diggory");
+    }
+
+    @Test
+    public void testPatchKeepsOtherStudentsCached() {
+        Student cedric = studentService.createStudent(new Student("Cedric", 17));
+        Student cho = studentService.createStudent(new Student("Cho", 17));
+        studentService.findStudent(cedric.getId());
+        studentService.findStudent(cho.getId());
+        Statistics statistics = statistics();
+
+        studentService.patchStudent(cedric.getId(), new StudentPatch(null, 18, cedric.getVersion()));
+        long statements = statistics.getPrepareStatementCount();
+        assertThat(studentService.findStudent(cho.getId()).getName()).isEqualTo("Cho");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+        assertThat(statistics.getDomainDataRegionStatistics("student").getMissCount()).isZero();
+        assertThat(studentService.findStudent(cedric.getId()).getAge()).isEqualTo(18);
+    }
+
+    @Test
+    public void testVersionIsComparedInDatabaseNotInCache() {
+        Student cedric = studentService.createStudent(new Student("Cedric", 17));
+        studentService.findStudent(cedric.getId());
+        // an edit made through another instance leaves this instance's cached copy behind
+        jdbcTemplate.update("UPDATE student SET age = 18, version = version + 1 WHERE id = ?", cedric.getId());
+
+        studentService.patchStudent(cedric.getId(), new StudentPatch("Cedric Diggory", null, cedric.getVersion() + 1));
+        Student patched = studentService.findStudent(cedric.getId());
+        assertThat(patched.getName()).isEqualTo("Cedric Diggory");
+        assertThat(patched.getAge()).isEqualTo(18);
+        assertThat(patched.getVersion()).isEqualTo(cedric.getVersion() + 2);
+    }
+
+    @Test
+    public void testEditReturnsStoredStudent() {
+        Student cedric = studentService.createStudent(new Student("Cedric", 17));
+        Student edit = new Student(null, 18);
+        edit.setId(cedric.getId());
+        edit.setVersion(cedric.getVersion());
+
+        Student edited = studentService.editStudent(edit);
+        assertThat(edited.getName()).isEqualTo("Cedric");
+        assertThat(edited.getAge()).isEqualTo(18);
+        assertThat(edited.getVersion()).isEqualTo(cedric.getVersion() + 1);
+    }
+
+    @Test
+    public void testCacheableQueryIsServedFromQueryCacheUntilTableChanges() {
+        studentService.createStudent(new Student("Cho", 17));
+        Statistics statistics = statistics();
+
+        assertThat(studentService.findByAge(17)).extracting(Student::getName).containsExactly("Cho");
+        long statements = statistics.getPrepareStatementCount();
+        assertThat(studentService.findByAge(17)).extracting(Student::getName).containsExactly("Cho");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+        assertThat(statistics.getQueryCacheHitCount()).isPositive();
+
+        studentService.createStudent(new Student("Marietta", 17));
+        assertThat(studentService.findByAge(17)).extracting(Student::getName).containsExactlyInAnyOrder("Cho", "Marietta");
+        assertThat(statistics.getPrepareStatementCount()).isGreaterThan(statements);
+    }
+
+    @Test
+    public void testPatchInvalidatesCachedQueries() {
+        Student cho = studentService.createStudent(new Student("Cho", 17));
+        assertThat(studentService.findByAge(17)).extracting(Student::getName).containsExactly("Cho");
+
+        studentService.patchStudent(cho.getId(), new StudentPatch(null, 18, cho.getVersion()));
+        assertThat(studentService.findByAge(17)).isEmpty();
+        assertThat(studentService.findByAge(18)).extracting(Student::getName).containsExactly("Cho");
+    }
+
+    @Test
+    public void testNamesStartingWithTreatWildcardsLiterally() {
+        studentService.createStudent(new Student("Hannah", 16));
+        studentService.createStudent(new Student("_Ernie", 16));
+
+        assertThat(studentService.getStudentNamesStartingWith('%')).isEmpty();
+        assertThat(studentService.getStudentNamesStartingWith('_')).containsExactly("_ERNIE");
+        assertThat(studentService.getStudentNamesStartingWith('h')).containsExactly("HANNAH");
+
+        studentService.createStudent(new Student("Harry", 17));
+        assertThat(studentService.getStudentNamesStartingWith('H')).containsExactly("HANNAH", "HARRY");
+    }
+}
@@ -1,30 +1,51 @@
 package ru.hogwarts.school;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import org.json.JSONObject;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.hogwarts.school.config.BinaryFormatsConfig;
 import ru.hogwarts.school.controller.StudentController;
+import ru.hogwarts.school.dto.BatchItemResult;
+import ru.hogwarts.school.dto.CsvImportResult;
+import ru.hogwarts.school.dto.NameMatch;
+import ru.hogwarts.school.dto.StudentPatch;
+import ru.hogwarts.school.dto.StudentSearchCriteria;
+import ru.hogwarts.school.exceptions.CsvFormatException;
 import ru.hogwarts.school.exceptions.NoSuchStudentException;
+import ru.hogwarts.school.exceptions.StudentEditConflictException;
+import ru.hogwarts.school.exceptions.UnsupportedSortException;
 import ru.hogwarts.school.model.Student;
 import ru.hogwarts.school.repository.StudentRepository;
 import ru.hogwarts.school.service.StudentService;
 
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(StudentController.class)
+@Import(BinaryFormatsConfig.class)
 public class StudentControllerTests {
 
     @Autowired
@@ -52,6 +73,7 @@ public class StudentControllerTests {
         studentObject.put("age", age);
         student.setId(id);
         student.setName(name);
+        student.setVersion(3L);
         student.setAge(age);
     }
 
@@ -75,6 +97,7 @@ public class StudentControllerTests {
         when(studentRepository.save(any())).thenReturn(student);
         when(studentService.editStudent(any())).thenReturn(student);
         studentObject.put("id", id);
+        studentObject.put("version", 3);
         mockMvc.perform(MockMvcRequestBuilders
                         .put("/students")
                         .content(studentObject.toString())
@@ -86,6 +109,54 @@ public class StudentControllerTests {
                 .andExpect(jsonPath("$.age").value(age));
     }
 
+    @Test
+    public void testEditStudentTakesVersionFromIfMatch() throws Exception {
+        when(studentService.editStudent(any())).thenReturn(student);
+        studentObject.put("id", id);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/students")
+                        .header("If-Match", "\"students-" + id + "-3\"")
+                        .content(studentObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        verify(studentService).editStudent(argThat(edited -> edited.getVersion() == 3L));
+    }
+
+    @Test
+    public void testEditStudentWithoutVersion() throws Exception {
+        studentObject.put("id", id);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .put("/students")
+                        .header("If-Match", "\"faculties-" + id + "-3\"")
+                        .content(studentObject.toString())
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isPreconditionRequired())
+                .andExpect(content().string(containsString("version")));
+        verify(studentService, never()).editStudent(any());
+    }
+
+    @Test
+    public void testPatchStudent() throws Exception {
+        StudentPatch patch = new StudentPatch(null, 13, 2L);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .patch("/students/{id}", id)
+                        .content("{\"age\": 13, \"version\": 2}")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        verify(studentService).patchStudent(id, patch);
+    }
+
+    @Test
+    public void testPatchStudentWithStaleVersion() throws Exception {
+        doThrow(new StudentEditConflictException(id)).when(studentService).patchStudent(eq(id), any());
+        mockMvc.perform(MockMvcRequestBuilders
+                        .patch("/students/{id}", id)
+                        .content("{\"age\": 13, \"version\": 1}")
+                        .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isConflict())
+                .andExpect(content().string(containsString("уже изменен другим запросом")));
+    }
+
     @Test
     public void testGetStudentInfo() throws Exception {
         when(studentService.findStudent(eq(id))).thenReturn(student);
@@ -99,6 +170,41 @@ public class StudentControllerTests {
                 .andExpect(jsonPath("$.age").value(age));
     }
 
+    @Test
+    public void testGetStudentInfoIsTaggedWithRowVersion() throws Exception {
+        when(studentService.findStudent(eq(id))).thenReturn(student);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/students/{id}", id))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"students-" + id + "-3\""))
+                .andExpect(header().string("Cache-Control", "max-age=0, must-revalidate"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/{id}", id).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag))
+                .andExpect(content().string(""));
+
+        student.setVersion(4L);
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/{id}", id).header("If-None-Match", eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(eTag)))
+                .andExpect(jsonPath("$.name").value(name));
+    }
+
+    @Test
+    public void testAggregateIsTaggedWithFeedPosition() throws Exception {
+        when(studentService.getAllStudentsCount()).thenReturn(2);
+        when(studentService.getDataVersion()).thenReturn(7L);
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/students/all-students-count"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"students-7\""))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/all-students-count").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+        verify(studentService, times(1)).getAllStudentsCount();
+    }
+
     @Test
     public void testDeleteStudent() throws Exception {
         doNothing().when(studentService).removeStudent(eq(id));
@@ -164,6 +270,20 @@ public class StudentControllerTests {
                 .andExpect(jsonPath("$.[*].name", containsInAnyOrder("Jane", "Phil")));
     }
 
+    @Test
+    public void testGetAllStudentsAsSmile() throws Exception {
+        when(studentService.findAllStudents()).thenReturn(students);
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students")
+                        .accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        List<Student> decoded = new SmileMapper().readValue(body, new TypeReference<>() {
+        });
+        assertThat(decoded).extracting(Student::getName).containsExactly("Jane", "Phil");
+    }
+
     @Test
     public void testFindStudentsByFaculty() throws Exception {
         Long facultyId = 1L;
@@ -176,6 +296,173 @@ public class StudentControllerTests {
                 .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
                 .andExpect(jsonPath("$.[*].facultyId", everyItem(is(facultyId.intValue()))));
     }
-}
 
+    @Test
+    public void testGetStudentsPage() throws Exception {
+        when(studentService.findStudentsPage(10L, 2)).thenReturn(students);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/page?afterId={afterId}&size={size}", 10L, 2)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[*].name", contains("Jane", "Phil")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamAllStudents() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Student> consumer = invocation.getArgument(0);
+            students.forEach(consumer);
+            return null;
+        }).when(studentService).streamAllStudents(ArgumentMatchers.any(Consumer.class));
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/stream")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(stringContainsInOrder("\"name\":\"Jane\"", "\n", "\"name\":\"Phil\"", "\n")));
+    }
 
+    @Test
+    public void testGetStudentNamesStartingWithLetter() throws Exception {
+        when(studentService.getStudentNamesStartingWith('J')).thenReturn(List.of("JAMES", "JANE"));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/names-starting-with/{letter}", "J")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", contains("JAMES", "JANE")));
+    }
+
+    @Test
+    public void testRequestIdIsEchoedOrGenerated() throws Exception {
+        when(studentService.findAllStudents()).thenReturn(students);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students")
+                        .header("X-Request-Id", "abc-123"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Request-Id", "abc-123"));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students")
+                        .header("X-Request-Id", "forged\nline"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Request-Id", matchesPattern("[0-9a-f-]{36}")));
+    }
+
+    @Test
+    public void testImportStudentsFromNdjson() throws Exception {
+        when(studentService.createStudents(ArgumentMatchers.anyList())).thenReturn(List.of(
+                new BatchItemResult(0, 10L, BatchItemResult.Status.CREATED),
+                new BatchItemResult(1, 11L, BatchItemResult.Status.CREATED)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/students/batch")
+                        .content("{\"name\":\"Jane\",\"age\":12}\n{\"name\":\"Phil\",\"age\":12}\n")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].id").value(11))
+                .andExpect(jsonPath("$[1].status").value("CREATED"));
+        verify(studentService, times(1)).createStudents(ArgumentMatchers.argThat(list -> list.size() == 2));
+    }
+
+    @Test
+    public void testImportStudentsFromCsv() throws Exception {
+        when(studentService.importStudentsCsv(any())).thenReturn(new CsvImportResult(1, 1, List.of(
+                new CsvImportResult.Rejection(2, "Phil", CsvImportResult.Reason.INVALID_AGE))));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/students/batch")
+                        .content("name,age,faculty_id\nJane,16,\nPhil,12,\n")
+                        .contentType("text/csv")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.rejections[0].row").value(2))
+                .andExpect(jsonPath("$.rejections[0].reason").value("INVALID_AGE"));
+
+        when(studentService.importStudentsCsv(any())).thenThrow(new CsvFormatException("extra data after last expected column"));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .post("/students/batch")
+                        .content("name,age,faculty_id\nJane,16,,1\n")
+                        .contentType("text/csv"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testExportStudentsAsCsv() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(0);
+            out.write("id,name,age,faculty_id\n1,Jane,16,\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(studentService).exportStudentsCsv(any());
+        MvcResult result = mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/stream")
+                        .accept("text/csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(content().string("id,name,age,faculty_id\n1,Jane,16,\n"));
+    }
+
+    @Test
+    public void testDeleteStudentsBatch() throws Exception {
+        when(studentService.removeStudents(List.of(1L, 2L))).thenReturn(List.of(
+                new BatchItemResult(0, 1L, BatchItemResult.Status.DELETED),
+                new BatchItemResult(1, 2L, BatchItemResult.Status.NOT_FOUND)));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .delete("/students/batch")
+                        .content("[1,2]")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("DELETED"))
+                .andExpect(jsonPath("$[1].status").value("NOT_FOUND"));
+    }
+
+    @Test
+    public void testSearchStudentsByName() throws Exception {
+        when(studentService.searchStudentsByName("har", NameMatch.SUBSTRING, 1, 10)).thenReturn(students);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/search-by-name")
+                        .param("query", "har")
+                        .param("match", "SUBSTRING")
+                        .param("page", "1")
+                        .param("size", "10")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].name", contains("Jane", "Phil")));
+    }
+
+    @Test
+    public void testSearchStudentsByCriteria() throws Exception {
+        StudentSearchCriteria criteria = new StudentSearchCriteria(12, 14, 3L, "ja", true);
+        when(studentService.searchStudents(criteria, Sort.by(Sort.Direction.DESC, "age"), 50)).thenReturn(students);
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/search")
+                        .param("minAge", "12")
+                        .param("maxAge", "14")
+                        .param("facultyId", "3")
+                        .param("namePrefix", "ja")
+                        .param("hasAvatar", "true")
+                        .param("sort", "age,desc")
+                        .param("limit", "50")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+    }
+
+    @Test
+    public void testSearchStudentsRejectsUnknownSortProperty() throws Exception {
+        when(studentService.searchStudents(ArgumentMatchers.any(), ArgumentMatchers.any(), anyInt()))
+                .thenThrow(new UnsupportedSortException("faculty"));
+        mockMvc.perform(MockMvcRequestBuilders
+                        .get("/students/search")
+                        .param("sort", "faculty"))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,110 @@
+package ru.hogwarts.school;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.hogwarts.school.dto.StudentSearchCriteria;
+import ru.hogwarts.school.service.StudentService;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the queries built by {@code /students/search} against PostgreSQL with a few
+ * hundred thousand rows and checks their plans: the common filter combinations must
+ * be served from indexes, never by a sequential scan.
+ */
+@SpringBootTest(properties = {
+        "path.to.avatars.folder=target/avatars",
+        "spring.jpa.properties.hibernate.criteria.value_handling_mode=inline",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=ru.hogwarts.school.StudentSearchPlanTests$CapturingStatementInspector"
+})
+@Testcontainers(disabledWithoutDocker = true)
+public class StudentSearchPlanTests {
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withInitScript("db/base-schema.sql");
+
+    private static final int LIMIT = 20;
+    private static boolean seeded;
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public static class CapturingStatementInspector implements StatementInspector {
+        static final List<String> statements = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+    }
+
+    @BeforeEach
+    void seed() {
+        if (seeded) {
+            return;
+        }
+        jdbcTemplate.execute("INSERT INTO faculty (id, name, colour) " +
+                "SELECT g, 'Faculty ' || g, 'colour ' || g FROM generate_series(1, 50) g");
+        jdbcTemplate.execute("INSERT INTO student (id, name, age, faculty_id) " +
+                "SELECT g, md5(g::text), 16 + g % 10, 1 + g % 50 FROM generate_series(1, 300000) g");
+        jdbcTemplate.execute("INSERT INTO avatar (id, file_path, file_size, media_type, student_id, thumbnails_pending) " +
+                "SELECT g, '/avatars/' || g || '.png', 1000, 'image/png', g, false FROM generate_series(1, 300000, 3) g");
+        jdbcTemplate.execute("ANALYZE");
+        seeded = true;
+    }
+
+    @Test
+    public void testFacultyAndAgeRange() {
+        assertNoSequentialScan(new StudentSearchCriteria(18, 20, 7L, null, null), Sort.by("age"));
+    }
+
+    @Test
+    public void testNamePrefix() {
+        assertNoSequentialScan(new StudentSearchCriteria(null, null, null, "ab", null), Sort.by("name"));
+    }
+
+    @Test
+    public void testFacultyAndNamePrefix() {
+        assertNoSequentialScan(new StudentSearchCriteria(null, null, 7L, "a", null), Sort.by("name"));
+    }
+
+    @Test
+    public void testFacultyAgeRangeAndAvatar() {
+        assertNoSequentialScan(new StudentSearchCriteria(18, 20, 7L, null, true), Sort.by("id"));
+    }
+
+    @Test
+    public void testAgeRangeSortedByAge() {
+        assertNoSequentialScan(new StudentSearchCriteria(17, 18, null, null, null), Sort.by(Sort.Direction.DESC, "age"));
+    }
+
+    private void assertNoSequentialScan(StudentSearchCriteria criteria, Sort sort) {
+        CapturingStatementInspector.statements.clear();
+        studentService.searchStudents(criteria, sort, LIMIT);
+        String sql = CapturingStatementInspector.statements.stream()
+                .filter(statement -> statement.contains("from student"))
+                .reduce((first, second) -> second)
+                .orElseThrow();
+        // with inline value handling only the row limit is still a bind parameter
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql.replace("?", String.valueOf(LIMIT)), String.class));
+        assertThat(plan).as(sql).doesNotContain("Seq Scan");
+    }
+}
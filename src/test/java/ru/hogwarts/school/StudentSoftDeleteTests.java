@@ -0,0 +1,118 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.model.Student;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.repository.StudentRepository;
+import ru.hogwarts.school.service.AvatarStorageCollector;
+import ru.hogwarts.school.service.StudentPurger;
+import ru.hogwarts.school.service.ThumbnailService;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:softdelete",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.liquibase.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "path.to.avatars.folder=target/avatars",
+        "students.soft-delete.enabled=true",
+        "students.purge.retention=0s",
+        "students.purge.batch-size=2"
+})
+@AutoConfigureMockMvc
+public class StudentSoftDeleteTests {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private AvatarRepository avatarRepository;
+
+    @Autowired
+    private StudentPurger studentPurger;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockitoBean
+    private ThumbnailService thumbnailService;
+
+    @MockitoBean
+    private AvatarStorageCollector avatarStorageCollector;
+
+    @AfterEach
+    void tearDown() {
+        avatarRepository.deleteAllInBatch();
+        jdbcTemplate.update("DELETE FROM student");
+    }
+
+    @Test
+    public void testDeletedStudentsAreHiddenAndPurged() throws Exception {
+        List<Student> students = studentRepository.saveAll(List.of(
+                new Student("Fred", 17), new Student("George", 17), new Student("Percy", 19), new Student("Ron", 12)));
+        avatarRepository.save(new Avatar(null, "target/avatars/fred.png", "image/png", 1L, students.get(0)));
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/students/{id}", students.get(0).getId()))
+                .andExpect(status().isOk());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/students/batch")
+                        .contentType("application/json")
+                        .content("[" + students.get(1).getId() + ", " + students.get(2).getId() + "]"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/{id}", students.get(0).getId()))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/all-students-count"))
+                .andExpect(content().string("1"));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/students/{id}", students.get(0).getId()))
+                .andExpect(status().isNotFound());
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM student", Integer.class)).isEqualTo(4);
+
+        studentPurger.purgeDeletedStudents();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM student", Integer.class)).isEqualTo(1);
+        assertThat(avatarRepository.count()).isZero();
+        assertThat(studentRepository.findAll()).extracting(Student::getName).containsExactly("Ron");
+    }
+
+    @Test
+    public void testAvatarsOfDeletedStudentsAreNotServed() throws Exception {
+        List<Student> students = studentRepository.saveAll(List.of(new Student("Fred", 17), new Student("Ron", 12)));
+        avatarRepository.save(new Avatar(null, "target/avatars/fred.png", "image/png", 1L, students.get(0)));
+        avatarRepository.save(new Avatar(null, "target/avatars/ron.png", "image/png", 1L, students.get(1)));
+        Long fredId = students.get(0).getId();
+
+        mockMvc.perform(MockMvcRequestBuilders.delete("/students/{id}", fredId))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/avatar/{id}/avatar", fredId))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.get("/avatar").param("page", "1").param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].filePath").value("target/avatars/ron.png"));
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/avatar/{id}/avatar", fredId)
+                        .file(new MockMultipartFile("avatar", "fred.png", "image/png", new byte[]{1, 2, 3})))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,77 @@
+package ru.hogwarts.school;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.hogwarts.school.service.ThumbnailGenerator;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ThumbnailGeneratorTests {
+
+    private final ThumbnailGenerator thumbnailGenerator = new ThumbnailGenerator();
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testScalesToEveryWidthKeepingAspectRatio() throws IOException {
+        Path original = writeImage("original.png", 400, 200, BufferedImage.TYPE_INT_ARGB, "png");
+
+        Map<Integer, byte[]> thumbnails = thumbnailGenerator.generate(original, "png", 64, 100, 256);
+
+        assertThat(thumbnails).containsOnlyKeys(64, 100, 256);
+        assertSize(thumbnails.get(64), 64, 32);
+        assertSize(thumbnails.get(100), 100, 50);
+        assertSize(thumbnails.get(256), 256, 128);
+        assertThat(read(thumbnails.get(64)).getColorModel().hasAlpha()).isTrue();
+    }
+
+    @Test
+    public void testDoesNotUpscaleSmallImages() throws IOException {
+        Path original = writeImage("small.png", 50, 30, BufferedImage.TYPE_INT_RGB, "png");
+
+        assertSize(thumbnailGenerator.generate(original, "png", 100).get(100), 50, 30);
+    }
+
+    @Test
+    public void testJpegThumbnailsHaveNoAlpha() throws IOException {
+        Path original = writeImage("original.jpg", 300, 300, BufferedImage.TYPE_INT_RGB, "jpg");
+
+        BufferedImage thumbnail = read(thumbnailGenerator.generate(original, "jpg", 64).get(64));
+
+        assertThat(thumbnail.getWidth()).isEqualTo(64);
+        assertThat(thumbnail.getColorModel().hasAlpha()).isFalse();
+    }
+
+    @Test
+    public void testRejectsUndecodableFiles() throws IOException {
+        Path original = Files.write(tempDir.resolve("broken.png"), new byte[]{1, 2, 3});
+
+        assertThatThrownBy(() -> thumbnailGenerator.generate(original, "png", 64)).isInstanceOf(IOException.class);
+    }
+
+    private Path writeImage(String fileName, int width, int height, int type, String format) throws IOException {
+        Path path = tempDir.resolve(fileName);
+        ImageIO.write(new BufferedImage(width, height, type), format, path.toFile());
+        return path;
+    }
+
+    private static void assertSize(byte[] image, int width, int height) throws IOException {
+        BufferedImage decoded = read(image);
+        assertThat(decoded.getWidth()).isEqualTo(width);
+        assertThat(decoded.getHeight()).isEqualTo(height);
+    }
+
+    private static BufferedImage read(byte[] image) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(image));
+    }
+}
@@ -0,0 +1,150 @@
+package ru.hogwarts.school;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import ru.hogwarts.school.model.Avatar;
+import ru.hogwarts.school.repository.AvatarRepository;
+import ru.hogwarts.school.service.ThumbnailGenerator;
+import ru.hogwarts.school.service.ThumbnailService;
+import ru.hogwarts.school.storage.ContentStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ThumbnailServiceTests {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    private final AvatarRepository avatarRepository = mock(AvatarRepository.class);
+    private final ThumbnailGenerator thumbnailGenerator = mock(ThumbnailGenerator.class);
+    private final Map<Long, Avatar> avatars = new ConcurrentHashMap<>();
+    private ContentStore contentStore;
+    private ThumbnailService thumbnailService;
+
+    final long id = 1L;
+    final Map<Integer, byte[]> generated = Map.of(64, new byte[]{1}, 100, new byte[]{2}, 256, new byte[]{3});
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+        when(avatarRepository.findById(anyLong())).thenAnswer(invocation -> Optional.ofNullable(avatars.get(invocation.<Long>getArgument(0))));
+        contentStore = new ContentStore(tempDir.toString());
+        thumbnailService = new ThumbnailService(avatarRepository, thumbnailGenerator, contentStore, transactionManager,
+                new SimpleMeterRegistry(), new int[]{256, 64, 100}, 1, 10, MAX_ATTEMPTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnailService.shutdown();
+    }
+
+    @Test
+    public void testResolveWidth() {
+        assertThat(thumbnailService.resolveWidth(10)).isEqualTo(64);
+        assertThat(thumbnailService.resolveWidth(100)).isEqualTo(100);
+        assertThat(thumbnailService.resolveWidth(101)).isEqualTo(256);
+        assertThat(thumbnailService.resolveWidth(1000)).isEqualTo(256);
+    }
+
+    @Test
+    public void testScheduledAvatarGetsThumbnailsForEveryWidth() throws Exception {
+        Avatar avatar = pendingAvatar("first");
+        when(thumbnailGenerator.generate(any(), eq("png"), eq(new int[]{64, 100, 256}))).thenReturn(generated);
+
+        thumbnailService.scheduleAfterCommit(id);
+
+        await(() -> !avatar.isThumbnailsPending());
+        assertThat(avatar.getThumbnails()).containsOnlyKeys(64, 100, 256);
+        assertThat(avatar.getThumbnails().values()).allMatch(key -> Files.exists(contentStore.resolve(key)));
+    }
+
+    @Test
+    public void testFailedJobKeepsAvatarPendingAndCountsTheAttempt() throws Exception {
+        Avatar avatar = pendingAvatar("first");
+        when(thumbnailGenerator.generate(any(), any(), any(int[].class))).thenThrow(new IOException("corrupt"));
+
+        thumbnailService.scheduleAfterCommit(id);
+
+        await(() -> avatar.getThumbnailAttempts() == 1);
+        assertThat(avatar.isThumbnailsPending()).isTrue();
+        assertThat(avatar.getThumbnails()).isEmpty();
+    }
+
+    @Test
+    public void testRecoveryReschedulesPendingAvatarsBelowMaxAttempts() throws Exception {
+        Avatar avatar = pendingAvatar("first");
+        avatar.setThumbnailAttempts(MAX_ATTEMPTS - 1);
+        when(avatarRepository.findIdsWithPendingThumbnails(eq(MAX_ATTEMPTS), any(Limit.class))).thenReturn(List.of(id));
+        when(thumbnailGenerator.generate(any(), any(), any(int[].class))).thenReturn(generated);
+
+        thumbnailService.recoverPendingThumbnails();
+
+        await(() -> !avatar.isThumbnailsPending());
+        assertThat(avatar.getThumbnails()).hasSize(3);
+    }
+
+    @Test
+    public void testReuploadWhileJobRunsDiscardsStaleResultAndRunsAgain() throws Exception {
+        Avatar original = pendingAvatar("first");
+        Avatar reuploaded = new Avatar(id, original.getFilePath(), "image/png", 1, null);
+        reuploaded.setContentHash("second");
+        reuploaded.setThumbnailsPending(true);
+        when(thumbnailGenerator.generate(any(), any(), any(int[].class)))
+                .thenAnswer(invocation -> {
+                    // the upload commits and asks for thumbnails while this job is still running
+                    avatars.put(id, reuploaded);
+                    thumbnailService.scheduleAfterCommit(id);
+                    return Map.of(64, new byte[]{1});
+                })
+                .thenReturn(generated);
+
+        thumbnailService.scheduleAfterCommit(id);
+
+        await(() -> !reuploaded.isThumbnailsPending());
+        assertThat(reuploaded.getThumbnails()).containsOnlyKeys(64, 100, 256);
+        assertThat(original.getThumbnails()).isEmpty();
+        verify(thumbnailGenerator, times(2)).generate(any(), any(), any(int[].class));
+    }
+
+    private Avatar pendingAvatar(String contentHash) throws IOException {
+        Path original = Files.write(tempDir.resolve("original.png"), new byte[]{9, 9, 9});
+        Avatar avatar = new Avatar(id, original.toString(), "image/png", 3, null);
+        avatar.setContentHash(contentHash);
+        avatar.setThumbnailsPending(true);
+        avatars.put(id, avatar);
+        return avatar;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
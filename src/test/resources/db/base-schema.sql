@@ -0,0 +1,29 @@
+-- Tables as they existed before the Liquibase changelog; changesets are applied on top.
+CREATE SEQUENCE faculty_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE student_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE avatar_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE faculty (
+    id BIGINT PRIMARY KEY,
+    name VARCHAR(255),
+    colour VARCHAR(255),
+    CONSTRAINT unique_colour UNIQUE (name, colour)
+);
+
+CREATE TABLE student (
+    id BIGINT PRIMARY KEY,
+    name TEXT NOT NULL,
+    age INTEGER NOT NULL DEFAULT 20,
+    faculty_id BIGINT REFERENCES faculty (id),
+    CONSTRAINT check_age CHECK (age >= 16),
+    CONSTRAINT unique_name UNIQUE (name)
+);
+
+CREATE TABLE avatar (
+    id BIGINT PRIMARY KEY,
+    file_path VARCHAR(255),
+    file_size BIGINT NOT NULL,
+    media_type VARCHAR(255),
+    data BYTEA,
+    student_id BIGINT UNIQUE REFERENCES student (id)
+);